@@ -0,0 +1,374 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Supplier;
+
+/**
+ * Throughput and allocation benchmarks of the filters on deterministic synthetic images, on the whole image and
+ * on a small region. The same cases run under JMH in {@code benchmarks/jmh}.
+ * <pre>
+ * javac -d out src/*.java benchmarks/*.java
+ * java -Xmx4g -cp out FilterBenchmark --sizes preview,12mp --types int_rgb
+ * </pre>
+ */
+final class FilterBenchmark {
+
+    private static final String USAGE = String.join(System.lineSeparator(),
+            "Usage: FilterBenchmark [options]",
+            "  --sizes       comma separated: preview, 12mp, 48mp (default all)",
+            "  --types       comma separated: int_rgb, int_argb, 3byte_bgr (default all)",
+            "  --filters     comma separated parts of method names, e.g. blur,sepia (default all)",
+            "  --regions     comma separated: full, small (default both)",
+            "  --warmup      warmup iterations per case (default 3)",
+            "  --iterations  measured iterations per case (default 5)",
+            "  --time        milliseconds per iteration (default 1000)",
+            "  --threads     threads per filter (default all cores)");
+
+    static final int SMALL_REGION = 256;
+
+    private static volatile int sink;
+
+    private final List<Size> sizes;
+    private final List<Type> types;
+    private final List<Method> filters;
+    private final boolean full;
+    private final boolean small;
+    private final int warmup;
+    private final int iterations;
+    private final long iterationNanos;
+    private final com.sun.management.ThreadMXBean threads;
+
+    private FilterBenchmark(List<Size> sizes, List<Type> types, List<Method> filters, boolean full, boolean small,
+                            int warmup, int iterations, long iterationMillis) {
+        this.sizes = sizes;
+        this.types = types;
+        this.filters = filters;
+        this.full = full;
+        this.small = small;
+        this.warmup = warmup;
+        this.iterations = iterations;
+        this.iterationNanos = iterationMillis * 1_000_000;
+        this.threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        threads.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        try {
+            List<Size> sizes = Arrays.asList(Size.values());
+            List<Type> types = Arrays.asList(Type.values());
+            List<String> filters = null, regions = Arrays.asList("full", "small");
+            int warmup = 3, iterations = 5, time = 1000;
+            for (int i = 0; i < args.length; i++) {
+                String value = i + 1 < args.length ? args[i + 1] : null;
+                if (value == null) {
+                    throw new IllegalArgumentException("Missing value for " + args[i]);
+                }
+                switch (args[i++]) {
+                    case "--sizes": sizes = parse(value, Size.class); break;
+                    case "--types": types = parse(value, Type.class); break;
+                    case "--filters": filters = split(value); break;
+                    case "--regions": regions = split(value); break;
+                    case "--warmup": warmup = count(args[i - 1], value, 0); break;
+                    case "--iterations": iterations = count(args[i - 1], value, 1); break;
+                    case "--time": time = count(args[i - 1], value, 1); break;
+                    case "--threads": ImageFilterProcessor.setParallelism(count(args[i - 1], value, 1)); break;
+                    default: throw new IllegalArgumentException("Unknown option: " + args[i - 1]);
+                }
+            }
+            for (String region : regions) {
+                if (!region.equals("full") && !region.equals("small")) {
+                    throw new IllegalArgumentException("Unknown region: " + region);
+                }
+            }
+            new FilterBenchmark(sizes, types, filterMethods(filters), regions.contains("full"), regions.contains("small"),
+                    warmup, iterations, time).run();
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+    }
+
+    private void run() {
+        System.out.println("Point kernels: " + PointKernels.describe());
+        System.out.printf(Locale.ROOT, "%-36s %-8s %-10s %-6s %12s %10s %12s %12s%n",
+                "Filter", "Size", "Type", "Region", "ops/s", "error", "alloc MB/s", "alloc B/op");
+        for (Size size : sizes) {
+            for (Type type : types) {
+                BufferedImage image = syntheticImage(size.width, size.height, type.imageType);
+                Region region = Region.of(new Rectangle((size.width - SMALL_REGION) / 2, (size.height - SMALL_REGION) / 2,
+                        SMALL_REGION, SMALL_REGION));
+                for (Method filter : filters) {
+                    Object[] arguments = arguments(filter, image);
+                    if (full) {
+                        report(filter, size, type, "full", measure(() -> invoke(filter, arguments)));
+                    }
+                    FilterStep step = step(filter);
+                    if (small && step != null) {
+                        report(filter, size, type, "small", measure(() -> step.apply(image, region)));
+                    }
+                }
+            }
+        }
+    }
+
+    private Result measure(Supplier<BufferedImage> operation) {
+        for (int i = 0; i < warmup; i++) {
+            iteration(operation);
+        }
+        double[] throughput = new double[iterations];
+        long operations = 0, allocated = 0, nanos = 0;
+        for (int i = 0; i < iterations; i++) {
+            long allocatedBefore = allocatedBytes();
+            long start = System.nanoTime();
+            int count = iteration(operation);
+            long elapsed = System.nanoTime() - start;
+            allocated += allocatedBytes() - allocatedBefore;
+            operations += count;
+            nanos += elapsed;
+            throughput[i] = count / (elapsed / 1e9);
+        }
+        return new Result(throughput, allocated / 1e6 / (nanos / 1e9), allocated / (double) operations);
+    }
+
+    private int iteration(Supplier<BufferedImage> operation) {
+        long end = System.nanoTime() + iterationNanos;
+        int count = 0;
+        do {
+            BufferedImage result = operation.get();
+            sink ^= result.getRGB(result.getWidth() / 2, result.getHeight() / 2);
+            count++;
+        } while (System.nanoTime() < end);
+        return count;
+    }
+
+    private long allocatedBytes() {
+        long total = 0;
+        for (long allocated : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            total += Math.max(allocated, 0);
+        }
+        return total;
+    }
+
+    private static void report(Method filter, Size size, Type type, String region, Result result) {
+        System.out.printf(Locale.ROOT, "%-36s %-8s %-10s %-6s %12.2f %10.2f %12.1f %12.0f%n",
+                label(filter), size, type, region,
+                result.mean(), result.error(), result.allocationRate, result.bytesPerOperation);
+    }
+
+    private static BufferedImage invoke(Method filter, Object[] arguments) {
+        try {
+            return (BufferedImage) filter.invoke(null, arguments);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException("Filter failed: " + filter.getName(), e.getCause());
+        }
+    }
+
+    private static List<Method> filterMethods(List<String> parts) {
+        List<Method> methods = new ArrayList<>();
+        for (Method method : ImageFilterProcessor.class.getMethods()) {
+            String name = method.getName().toLowerCase(Locale.ROOT);
+            if (!Modifier.isStatic(method.getModifiers()) || !name.startsWith("apply") || !name.endsWith("filter")
+                    || method.getReturnType() != BufferedImage.class) {
+                continue;
+            }
+            if (parts == null || parts.stream().anyMatch(part -> name.contains(part.toLowerCase(Locale.ROOT)))) {
+                methods.add(method);
+            }
+        }
+        if (methods.isEmpty()) {
+            throw new IllegalArgumentException("No filter matches " + parts);
+        }
+        methods.sort(Comparator.comparing(FilterBenchmark::label));
+        return methods;
+    }
+
+    private static Object[] arguments(Method filter, BufferedImage image) {
+        Class<?>[] types = filter.getParameterTypes();
+        Object[] arguments = new Object[types.length];
+        arguments[0] = image;
+        for (int i = 1; i < types.length; i++) {
+            if (types[i] == int.class) {
+                arguments[i] = 4;
+            } else if (types[i] == double.class) {
+                arguments[i] = 2.0;
+            } else if (types[i] == Color.class) {
+                arguments[i] = new Color(255, 200, 200);
+            } else if (types[i] == EdgeMode.class) {
+                arguments[i] = EdgeMode.CROP;
+            } else if (types[i] == Rectangle.class) {
+                arguments[i] = new Rectangle(image.getWidth() / 4, image.getHeight() / 4, image.getWidth() / 2, image.getHeight() / 2);
+            } else {
+                throw new IllegalStateException("No benchmark argument for " + types[i].getSimpleName() + " of " + filter.getName());
+            }
+        }
+        return arguments;
+    }
+
+    private static FilterStep step(Method filter) {
+        String name = filter.getName();
+        String words = name.substring("apply".length(), name.length() - "Filter".length());
+        try {
+            return FilterStep.of(words.replaceAll("([a-z])([A-Z0-9])", "$1-$2").toLowerCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static String label(Method filter) {
+        StringBuilder label = new StringBuilder(filter.getName().substring("apply".length()));
+        Class<?>[] types = filter.getParameterTypes();
+        if (types.length > 1) {
+            label.append('(');
+            for (int i = 1; i < types.length; i++) {
+                label.append(i > 1 ? "," : "").append(types[i].getSimpleName());
+            }
+            label.append(')');
+        }
+        return label.toString();
+    }
+
+    static BufferedImage syntheticImage(int width, int height, int type) {
+        PackedRaster raster = PackedRaster.of(new BufferedImage(width, height, type));
+        boolean alpha = raster.toImage().getColorModel().hasAlpha();
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int noise = hash(x, y);
+                int red = x * 255 / Math.max(1, width - 1);
+                int green = y * 255 / Math.max(1, height - 1);
+                int blue = ((x / 64 + y / 64) & 1) == 0 ? noise & 0xFF : 255 - (noise & 0x3F);
+                int a = alpha ? 128 + ((noise >>> 8) & 0x7F) : 0xFF;
+                raster.pixels[y * width + x] = a << 24 | red << 16 | green << 8 | blue;
+            }
+        }
+        return raster.toImage();
+    }
+
+    private static int hash(int x, int y) {
+        int h = x * 0x9E3779B1 ^ y * 0x85EBCA77;
+        h ^= h >>> 15;
+        h *= 0x2C1B3C6D;
+        return h ^ (h >>> 12);
+    }
+
+    private static List<String> split(String value) {
+        List<String> parts = new ArrayList<>();
+        for (String part : value.split(",")) {
+            if (!part.trim().isEmpty()) {
+                parts.add(part.trim().toLowerCase(Locale.ROOT));
+            }
+        }
+        return parts;
+    }
+
+    static <T extends Enum<T>> List<T> parse(String value, Class<T> type) {
+        List<T> values = new ArrayList<>();
+        for (String part : split(value)) {
+            T match = null;
+            for (T constant : type.getEnumConstants()) {
+                if (constant.toString().equals(part)) {
+                    match = constant;
+                }
+            }
+            if (match == null) {
+                throw new IllegalArgumentException("Unknown " + type.getSimpleName().toLowerCase(Locale.ROOT) + ": " + part);
+            }
+            values.add(match);
+        }
+        return values;
+    }
+
+    private static int count(String option, String value, int minimum) {
+        try {
+            int number = Integer.parseInt(value);
+            if (number >= minimum) {
+                return number;
+            }
+        } catch (NumberFormatException ignored) {
+        }
+        throw new IllegalArgumentException(option + " must be an integer of at least " + minimum + ": " + value);
+    }
+
+    enum Size {
+        PREVIEW("preview", 1280, 960),
+        MP12("12mp", 4000, 3000),
+        MP48("48mp", 8000, 6000);
+
+        final String label;
+        final int width;
+        final int height;
+
+        Size(String label, int width, int height) {
+            this.label = label;
+            this.width = width;
+            this.height = height;
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    enum Type {
+        INT_RGB(BufferedImage.TYPE_INT_RGB),
+        INT_ARGB(BufferedImage.TYPE_INT_ARGB),
+        BYTE_BGR(BufferedImage.TYPE_3BYTE_BGR) {
+            @Override
+            public String toString() {
+                return "3byte_bgr";
+            }
+        };
+
+        final int imageType;
+
+        Type(int imageType) {
+            this.imageType = imageType;
+        }
+
+        @Override
+        public String toString() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private static final class Result {
+
+        final double[] throughput;
+        final double allocationRate;
+        final double bytesPerOperation;
+
+        Result(double[] throughput, double allocationRate, double bytesPerOperation) {
+            this.throughput = throughput;
+            this.allocationRate = allocationRate;
+            this.bytesPerOperation = bytesPerOperation;
+        }
+
+        double mean() {
+            return Arrays.stream(throughput).average().orElse(0);
+        }
+
+        /**
+         * From the normal approximation, as a rough guide.
+         */
+        double error() {
+            if (throughput.length < 2) {
+                return Double.NaN;
+            }
+            double mean = mean();
+            double variance = Arrays.stream(throughput).map(value -> (value - mean) * (value - mean)).sum() / (throughput.length - 1);
+            return 3.29 * Math.sqrt(variance / throughput.length);
+        }
+    }
+}
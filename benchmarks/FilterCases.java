@@ -0,0 +1,41 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.function.Supplier;
+
+/**
+ * JMH benchmarks must be in a named package, which cannot see the default package, so they look this class up
+ * by name once per trial.
+ */
+public final class FilterCases {
+
+    private FilterCases() {
+    }
+
+    /**
+     * @param region {@code "full"} or {@code "small"}
+     */
+    public static Supplier<BufferedImage> filter(String filters, String size, String type, String region) {
+        System.setProperty("java.awt.headless", "true");
+        FilterBenchmark.Size imageSize = FilterBenchmark.parse(size, FilterBenchmark.Size.class).get(0);
+        FilterBenchmark.Type imageType = FilterBenchmark.parse(type, FilterBenchmark.Type.class).get(0);
+        FilterChain chain = FilterChain.parse(filters);
+        BufferedImage image = FilterBenchmark.syntheticImage(imageSize.width, imageSize.height, imageType.imageType);
+        Region area;
+        switch (region) {
+            case "full":
+                area = null;
+                break;
+            case "small":
+                area = Region.of(new Rectangle((imageSize.width - FilterBenchmark.SMALL_REGION) / 2,
+                        (imageSize.height - FilterBenchmark.SMALL_REGION) / 2, FilterBenchmark.SMALL_REGION, FilterBenchmark.SMALL_REGION));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown region: " + region);
+        }
+        return () -> chain.apply(image, area);
+    }
+
+    public static String pointKernels() {
+        return PointKernels.describe();
+    }
+}
@@ -0,0 +1,63 @@
+package photomaster.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Throughput of filters over image sizes, types and regions; run with {@code -prof gc} for the bytes allocated per
+ * operation. The filters are reached through {@code FilterCases} in the default package, looked up once per trial.
+ * <pre>
+ * mvn -f benchmarks/jmh/pom.xml package
+ * java -jar benchmarks/jmh/target/benchmarks.jar -prof gc -p size=preview -p filter=sepia,blur:3
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx4g", "--add-modules", "jdk.incubator.vector" })
+public class FilterJmhBenchmark {
+
+    @Param({ "preview", "12mp", "48mp" })
+    public String size;
+
+    @Param({ "int_rgb", "int_argb", "3byte_bgr" })
+    public String type;
+
+    @Param({ "grayscale", "sepia", "tint", "blur:3", "gaussian-blur:30", "pixelate:8", "vignette", "auto-levels", "rotate-90" })
+    public String filter;
+
+    @Param({ "full", "small" })
+    public String region;
+
+    private Supplier<BufferedImage> run;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setUp() throws ReflectiveOperationException {
+        Class<?> cases = Class.forName("FilterCases");
+        run = (Supplier<BufferedImage>) cases.getMethod("filter", String.class, String.class, String.class, String.class)
+                .invoke(null, filter, size, type, region);
+        System.out.println("Point kernels: " + cases.getMethod("pointKernels").invoke(null));
+    }
+
+    @Benchmark
+    public BufferedImage apply() {
+        return run.get();
+    }
+}
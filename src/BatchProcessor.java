@@ -0,0 +1,399 @@
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Headless batch mode. Decoding, filtering and encoding run as separate stages connected by bounded queues,
+ * so disk I/O of one image overlaps with the filtering of another.
+ */
+final class BatchProcessor {
+
+    private static final String USAGE = String.join(System.lineSeparator(),
+            "Usage: batch --input <directory|glob> --output <directory> --filters <chain> [options]",
+            "       batch --list-filters",
+            "  --filters   comma separated filters, arguments after ':' e.g. sepia,pixelate:8,tint:255:200:200",
+            "  --format    output format: png, jpg, tiff, bmp or another ImageIO format (default png)",
+            "  --deflate   deflate level of png and tiff output, 0-9 (default " + ImageExporter.DEFAULT_COMPRESSION + ")",
+            "  --quality   jpeg quality, 0-100 (default " + ImageExporter.DEFAULT_QUALITY + ")",
+            "  --decoders  decoder threads (default 2)",
+            "  --workers   concurrent filter chains (default 1)",
+            "  --encoders  encoder threads (default 2)",
+            "  --queue     images buffered between stages (default 4)",
+            "  --threads   threads per filter (default all cores)",
+            "  --resize    <width>x<height>, scale to fit before filtering, keeping the aspect ratio",
+            "  --resample  box, bilinear, bicubic or lanczos (default lanczos)",
+            "  --cache     directory keeping results across runs, so unchanged inputs are not filtered again",
+            "  --cache-mb  size limit of the cache directory in MB (default 2048)",
+            "  --metrics   print time, throughput and allocation per filter and stage at the end");
+
+    private static final Job END = new Job(null, 0, null);
+    private static final String GLOB_CHARACTERS = "*?[{";
+
+    private final FilterChain chain;
+    private final ResultCache cache;
+    private final Dimension resize;
+    private final Resampler.Kernel resampling;
+    private final Path outputDirectory;
+    private final ImageExporter exporter;
+    private final int decoders;
+    private final int workers;
+    private final int encoders;
+    private final BlockingQueue<Job> decoded;
+    private final BlockingQueue<Job> filtered;
+
+    private final AtomicInteger nextInput = new AtomicInteger();
+    private final AtomicInteger completed = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+
+    /**
+     * @param cache  {@code null} to filter every image
+     * @param resize {@code null} to keep sizes
+     */
+    BatchProcessor(FilterChain chain, ResultCache cache, Dimension resize, Resampler.Kernel resampling, Path outputDirectory,
+                   ImageExporter exporter, int decoders, int workers, int encoders, int queueCapacity) {
+        this.chain = chain;
+        this.cache = cache;
+        this.resize = resize;
+        this.resampling = resampling;
+        this.outputDirectory = outputDirectory;
+        this.exporter = exporter;
+        this.decoders = decoders;
+        this.workers = workers;
+        this.encoders = encoders;
+        this.decoded = new ArrayBlockingQueue<>(queueCapacity);
+        this.filtered = new ArrayBlockingQueue<>(queueCapacity);
+    }
+
+    static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        try {
+            String input = null, output = null, filters = null, format = "png", cacheDirectory = null;
+            Dimension resize = null;
+            Resampler.Kernel resampling = Resampler.Kernel.LANCZOS;
+            int decoders = 2, workers = 1, encoders = 2, queue = 4, cacheMegabytes = 2048;
+            int compression = ImageExporter.DEFAULT_COMPRESSION, quality = ImageExporter.DEFAULT_QUALITY;
+            boolean metrics = false;
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("--metrics")) {
+                    metrics = true;
+                    continue;
+                }
+                if (args[i].equals("--list-filters")) {
+                    FilterRegistry.all().forEach(filter -> System.out.println(filter.describe()));
+                    return;
+                }
+                String value = i + 1 < args.length ? args[i + 1] : null;
+                if (value == null) {
+                    throw new IllegalArgumentException("Missing value for " + args[i]);
+                }
+                switch (args[i++]) {
+                    case "--input": input = value; break;
+                    case "--output": output = value; break;
+                    case "--filters": filters = value; break;
+                    case "--format": format = value.toLowerCase(Locale.ROOT); break;
+                    case "--decoders": decoders = positive(args[i - 1], value); break;
+                    case "--workers": workers = positive(args[i - 1], value); break;
+                    case "--encoders": encoders = positive(args[i - 1], value); break;
+                    case "--queue": queue = positive(args[i - 1], value); break;
+                    case "--threads": ImageFilterProcessor.setParallelism(positive(args[i - 1], value)); break;
+                    case "--cache": cacheDirectory = value; break;
+                    case "--resize": resize = size(value); break;
+                    case "--resample": resampling = Resampler.Kernel.parse(value); break;
+                    case "--cache-mb": cacheMegabytes = positive(args[i - 1], value); break;
+                    case "--deflate": compression = integer(args[i - 1], value); break;
+                    case "--quality": quality = integer(args[i - 1], value); break;
+                    default: throw new IllegalArgumentException("Unknown option: " + args[i - 1]);
+                }
+            }
+            if (input == null || output == null || filters == null) {
+                throw new IllegalArgumentException("--input, --output and --filters are required");
+            }
+            ImageExporter exporter = new ImageExporter(format, compression, quality);
+
+            List<Path> inputs = resolveInputs(input);
+            ResultCache cache = cacheDirectory == null ? null : new ResultCache(0, Paths.get(cacheDirectory), cacheMegabytes * 1024L * 1024);
+            BatchProcessor processor = new BatchProcessor(FilterChain.parse(filters), cache, resize, resampling, Paths.get(output), exporter,
+                    decoders, workers, encoders, queue);
+            System.out.println(processor.run(inputs));
+            if (cache != null) {
+                System.out.println(cache);
+            }
+            if (metrics) {
+                System.out.print(FilterMetrics.statistics());
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+        } catch (IOException | InterruptedException e) {
+            System.err.println("Batch failed: " + e);
+            System.exit(1);
+        }
+    }
+
+    static int integer(String option, String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(option + " must be an integer: " + value);
+        }
+    }
+
+    static int positive(String option, String value) {
+        try {
+            int number = Integer.parseInt(value);
+            if (number > 0) {
+                return number;
+            }
+        } catch (NumberFormatException ignored) {
+        }
+        throw new IllegalArgumentException(option + " must be a positive integer: " + value);
+    }
+
+    private static Dimension size(String value) {
+        String[] parts = value.toLowerCase(Locale.ROOT).split("x");
+        if (parts.length == 2) {
+            try {
+                Dimension size = new Dimension(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]));
+                if (size.width > 0 && size.height > 0) {
+                    return size;
+                }
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        throw new IllegalArgumentException("--resize must be <width>x<height>: " + value);
+    }
+
+    /**
+     * Only the file name may contain glob syntax such as {@code *} or {@code ?}; the directory part is taken literally.
+     */
+    static List<Path> resolveInputs(String input) throws IOException {
+        int separator = Math.max(input.lastIndexOf('/'), input.lastIndexOf(File.separatorChar));
+        String name = input.substring(separator + 1);
+        List<Path> inputs = new ArrayList<>();
+        if (name.chars().anyMatch(c -> GLOB_CHARACTERS.indexOf(c) >= 0)) {
+            Path directory = separator < 0 ? Paths.get(".") : Paths.get(input.substring(0, separator + 1));
+            PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + name);
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                for (Path file : stream) {
+                    if (Files.isRegularFile(file) && matcher.matches(file.getFileName())) {
+                        inputs.add(file);
+                    }
+                }
+            }
+        } else if (Files.isDirectory(Paths.get(input))) {
+            Set<String> suffixes = Arrays.stream(ImageIO.getReaderFileSuffixes())
+                    .map(suffix -> suffix.toLowerCase(Locale.ROOT))
+                    .collect(Collectors.toSet());
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(Paths.get(input))) {
+                for (Path file : stream) {
+                    if (Files.isRegularFile(file) && suffixes.contains(suffix(file))) {
+                        inputs.add(file);
+                    }
+                }
+            }
+        } else if (Files.isRegularFile(Paths.get(input))) {
+            inputs.add(Paths.get(input));
+        }
+        Collections.sort(inputs);
+        return inputs;
+    }
+
+    private static String suffix(Path file) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot < 0 ? "" : name.substring(dot + 1).toLowerCase(Locale.ROOT);
+    }
+
+    Report run(List<Path> inputs) throws IOException, InterruptedException {
+        Files.createDirectories(outputDirectory);
+        long start = System.nanoTime();
+
+        ExecutorService decodePool = Executors.newFixedThreadPool(decoders);
+        ExecutorService filterPool = Executors.newFixedThreadPool(workers);
+        ExecutorService encodePool = Executors.newFixedThreadPool(encoders);
+        AtomicInteger activeDecoders = new AtomicInteger(decoders);
+        AtomicInteger activeWorkers = new AtomicInteger(workers);
+
+        for (int i = 0; i < decoders; i++) {
+            decodePool.execute(() -> runStage(() -> decodeAll(inputs), activeDecoders, decoded, workers));
+        }
+        for (int i = 0; i < workers; i++) {
+            filterPool.execute(() -> runStage(this::filterAll, activeWorkers, filtered, encoders));
+        }
+        for (int i = 0; i < encoders; i++) {
+            encodePool.execute(() -> runStage(this::encodeAll, new AtomicInteger(1), null, 0));
+        }
+
+        for (ExecutorService pool : List.of(decodePool, filterPool, encodePool)) {
+            pool.shutdown();
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+        return new Report(completed.get(), failed.get(), bytesRead.get(), bytesWritten.get(), System.nanoTime() - start);
+    }
+
+    /**
+     * The last thread of a stage to finish tells the next stage to stop.
+     */
+    private void runStage(InterruptibleRunnable stage, AtomicInteger active, BlockingQueue<Job> next, int consumers) {
+        try {
+            stage.run();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (active.decrementAndGet() == 0 && next != null) {
+                try {
+                    for (int i = 0; i < consumers; i++) {
+                        next.put(END);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    private void decodeAll(List<Path> inputs) throws InterruptedException {
+        for (int index = nextInput.getAndIncrement(); index < inputs.size(); index = nextInput.getAndIncrement()) {
+            Path source = inputs.get(index);
+            try {
+                long size = Files.size(source);
+                FilterMetrics.Timer timer = FilterMetrics.startStage("decode", 0);
+                BufferedImage image = ImageIO.read(source.toFile());
+                if (image == null) {
+                    throw new IOException("No image reader for " + source);
+                }
+                timer.stop();
+                bytesRead.addAndGet(size);
+                decoded.put(new Job(source, size, PackedRaster.toSupportedType(image)));
+            } catch (IOException | UncheckedIOException e) {
+                fail(source, e);
+            }
+        }
+    }
+
+    private void filterAll() throws InterruptedException {
+        for (Job job = decoded.take(); job != END; job = decoded.take()) {
+            try {
+                FilterMetrics.Timer timer = FilterMetrics.startStage("filter", (long) job.image.getWidth() * job.image.getHeight());
+                BufferedImage image = resize == null ? job.image : resize(job.image);
+                BufferedImage result = cache == null
+                        ? chain.apply(image)
+                        : cache.apply(image, chain.cacheKey(), null, () -> chain.apply(image));
+                timer.stop();
+                filtered.put(new Job(job.source, job.size, result));
+            } catch (RuntimeException e) {
+                fail(job.source, e);
+            }
+        }
+    }
+
+    private void encodeAll() throws InterruptedException {
+        for (Job job = filtered.take(); job != END; job = filtered.take()) {
+            Path target = outputDirectory.resolve(baseName(job.source) + "." + exporter.format);
+            try {
+                FilterMetrics.Timer timer = FilterMetrics.startStage("encode", (long) job.image.getWidth() * job.image.getHeight());
+                long size = exporter.write(job.image, target);
+                timer.stop();
+                bytesWritten.addAndGet(size);
+                completed.incrementAndGet();
+            } catch (IOException | RuntimeException e) {
+                fail(job.source, e);
+            }
+        }
+    }
+
+    private BufferedImage resize(BufferedImage image) {
+        Dimension size = Resampler.fit(image.getWidth(), image.getHeight(), resize.width, resize.height);
+        return Resampler.resize(image, size.width, size.height, resampling);
+    }
+
+    private void fail(Path source, Exception e) {
+        failed.incrementAndGet();
+        System.err.println("Failed " + source + ": " + e.getMessage());
+    }
+
+    private static String baseName(Path source) {
+        String name = source.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot < 0 ? name : name.substring(0, dot);
+    }
+
+    @FunctionalInterface
+    private interface InterruptibleRunnable {
+        void run() throws InterruptedException;
+    }
+
+    private static final class Job {
+
+        final Path source;
+        final long size;
+        final BufferedImage image;
+
+        Job(Path source, long size, BufferedImage image) {
+            this.source = source;
+            this.size = size;
+            this.image = image;
+        }
+    }
+
+    static final class Report {
+
+        final int completed;
+        final int failed;
+        final long bytesRead;
+        final long bytesWritten;
+        final long elapsedNanos;
+
+        Report(int completed, int failed, long bytesRead, long bytesWritten, long elapsedNanos) {
+            this.completed = completed;
+            this.failed = failed;
+            this.bytesRead = bytesRead;
+            this.bytesWritten = bytesWritten;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        double imagesPerSecond() {
+            return completed / seconds();
+        }
+
+        double megabytesPerSecond() {
+            return bytesRead / 1e6 / seconds();
+        }
+
+        private double seconds() {
+            return Math.max(elapsedNanos, 1) / 1e9;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "Processed %d images (%d failed) in %.2f s: %.2f images/sec, %.2f MB/sec read, %.2f MB/sec written",
+                    completed, failed, seconds(), imagesPerSecond(), megabytesPerSecond(), bytesWritten / 1e6 / seconds());
+        }
+    }
+}
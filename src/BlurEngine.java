@@ -0,0 +1,158 @@
+/**
+ * Separable running-sum blurs whose cost per pixel does not depend on the radius. Only windows reaching past an
+ * edge go through {@link EdgeMode}.
+ */
+final class BlurEngine {
+
+    private static final int GAUSSIAN_PASSES = 3;
+
+    private BlurEngine() {
+    }
+
+    /**
+     * Truncates like integer division.
+     */
+    static int[] boxBlur(int[] pixels, int width, int height, int radius, EdgeMode edge) {
+        return box(pixels, width, height, radius, edge, false);
+    }
+
+    static int[] gaussianBlur(int[] pixels, int width, int height, double sigma, EdgeMode edge) {
+        int[] result = pixels;
+        for (int radius : gaussianBoxRadii(sigma)) {
+            result = box(result, width, height, radius, edge, true);
+        }
+        return result == pixels ? box(pixels, width, height, 0, edge, true) : result;
+    }
+
+    static int[] gaussianBoxRadii(double sigma) {
+        if (sigma <= 0) {
+            return new int[0];
+        }
+        double idealWidth = Math.sqrt(12 * sigma * sigma / GAUSSIAN_PASSES + 1);
+        int lower = (int) Math.floor(idealWidth);
+        if (lower % 2 == 0) {
+            lower--;
+        }
+        int upper = lower + 2;
+        double idealLowerPasses = (12 * sigma * sigma - GAUSSIAN_PASSES * lower * lower - 4.0 * GAUSSIAN_PASSES * lower - 3 * GAUSSIAN_PASSES)
+                / (-4.0 * lower - 4);
+        long lowerPasses = Math.round(idealLowerPasses);
+        int[] radii = new int[GAUSSIAN_PASSES];
+        for (int i = 0; i < GAUSSIAN_PASSES; i++) {
+            radii[i] = ((i < lowerPasses ? lower : upper) - 1) / 2;
+        }
+        return radii;
+    }
+
+    private static int[] box(int[] pixels, int width, int height, int radius, EdgeMode edge, boolean round) {
+        if (radius < 0) {
+            throw new IllegalArgumentException("Blur radius must not be negative: " + radius);
+        }
+        int size = width * height;
+        int[] red = new int[size], green = new int[size], blue = new int[size];
+        TileExecutor.forEachBand(width, height, (startY, endY) -> {
+            for (int y = startY; y < endY; y++) {
+                horizontal(pixels, red, green, blue, y * width, width, radius, edge);
+            }
+        });
+
+        int[] columnCounts = counts(width, radius, edge);
+        int[] rowCounts = counts(height, radius, edge);
+        int[] result = new int[size];
+        TileExecutor.forEachBand(height, width, (startX, endX) ->
+                vertical(red, green, blue, result, width, height, startX, endX, radius, edge, columnCounts, rowCounts, round));
+        return result;
+    }
+
+    private static void horizontal(int[] pixels, int[] red, int[] green, int[] blue, int row, int width, int radius, EdgeMode edge) {
+        int sumRed = 0, sumGreen = 0, sumBlue = 0;
+        for (int k = -radius; k <= radius; k++) {
+            int i = edge.map(k, width);
+            if (i >= 0) {
+                int argb = pixels[row + i];
+                sumRed += (argb >> 16) & 0xFF;
+                sumGreen += (argb >> 8) & 0xFF;
+                sumBlue += argb & 0xFF;
+            }
+        }
+        for (int x = 0; x < width; x++) {
+            red[row + x] = sumRed;
+            green[row + x] = sumGreen;
+            blue[row + x] = sumBlue;
+
+            int entering = x + radius + 1, leaving = x - radius;
+            if (entering < width && leaving >= 0) {
+                int in = pixels[row + entering], out = pixels[row + leaving];
+                sumRed += ((in >> 16) & 0xFF) - ((out >> 16) & 0xFF);
+                sumGreen += ((in >> 8) & 0xFF) - ((out >> 8) & 0xFF);
+                sumBlue += (in & 0xFF) - (out & 0xFF);
+                continue;
+            }
+            int in = edge.map(entering, width), out = edge.map(leaving, width);
+            if (in >= 0) {
+                int argb = pixels[row + in];
+                sumRed += (argb >> 16) & 0xFF;
+                sumGreen += (argb >> 8) & 0xFF;
+                sumBlue += argb & 0xFF;
+            }
+            if (out >= 0) {
+                int argb = pixels[row + out];
+                sumRed -= (argb >> 16) & 0xFF;
+                sumGreen -= (argb >> 8) & 0xFF;
+                sumBlue -= argb & 0xFF;
+            }
+        }
+    }
+
+    private static void vertical(int[] red, int[] green, int[] blue, int[] result, int width, int height, int startX, int endX,
+                                 int radius, EdgeMode edge, int[] columnCounts, int[] rowCounts, boolean round) {
+        int strip = endX - startX;
+        long[] sumRed = new long[strip], sumGreen = new long[strip], sumBlue = new long[strip];
+        for (int k = -radius; k <= radius; k++) {
+            int j = edge.map(k, height);
+            if (j >= 0) {
+                addRow(red, green, blue, sumRed, sumGreen, sumBlue, j * width + startX, strip, 1);
+            }
+        }
+        for (int y = 0; y < height; y++) {
+            int row = y * width + startX;
+            for (int x = 0; x < strip; x++) {
+                long count = (long) columnCounts[startX + x] * rowCounts[y];
+                long bias = round ? count / 2 : 0;
+                result[row + x] = ImageFilterProcessor.rgb(
+                        (int) ((sumRed[x] + bias) / count),
+                        (int) ((sumGreen[x] + bias) / count),
+                        (int) ((sumBlue[x] + bias) / count));
+            }
+            if (y + 1 == height) {
+                break;
+            }
+            int in = edge.map(y + radius + 1, height), out = edge.map(y - radius, height);
+            if (in >= 0) {
+                addRow(red, green, blue, sumRed, sumGreen, sumBlue, in * width + startX, strip, 1);
+            }
+            if (out >= 0) {
+                addRow(red, green, blue, sumRed, sumGreen, sumBlue, out * width + startX, strip, -1);
+            }
+        }
+    }
+
+    private static void addRow(int[] red, int[] green, int[] blue, long[] sumRed, long[] sumGreen, long[] sumBlue,
+                               int start, int length, int sign) {
+        for (int x = 0; x < length; x++) {
+            sumRed[x] += sign * red[start + x];
+            sumGreen[x] += sign * green[start + x];
+            sumBlue[x] += sign * blue[start + x];
+        }
+    }
+
+    private static int[] counts(int length, int radius, EdgeMode edge) {
+        int[] counts = new int[length];
+        for (int i = 0; i < length; i++) {
+            counts[i] = edge == EdgeMode.CROP
+                    ? Math.min(length - 1, i + radius) - Math.max(0, i - radius) + 1
+                    : 2 * radius + 1;
+        }
+        return counts;
+    }
+}
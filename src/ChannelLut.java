@@ -0,0 +1,119 @@
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Point filter compiled to one 256-entry table per output channel, each reading one input channel, so channel
+ * swaps compile to tables too and any sequence of channel LUTs composes into one.
+ */
+final class ChannelLut implements ImageFilterProcessor.PixelTransformer {
+
+    static final int RED = 0;
+    static final int GREEN = 1;
+    static final int BLUE = 2;
+
+    private final int[][] tables;
+    private final int[] sources;
+
+    private final int[] redTable;
+    private final int[] greenTable;
+    private final int[] blueTable;
+    private final int redShift;
+    private final int greenShift;
+    private final int blueShift;
+    private final PointKernels.RowKernel rowKernel;
+
+    private ChannelLut(int[][] tables, int[] sources) {
+        this(tables, sources, null);
+    }
+
+    private ChannelLut(int[][] tables, int[] sources, PointKernels.RowKernel rowKernel) {
+        this.tables = tables;
+        this.sources = sources;
+        this.redTable = shifted(tables[RED], RED);
+        this.greenTable = shifted(tables[GREEN], GREEN);
+        this.blueTable = shifted(tables[BLUE], BLUE);
+        this.redShift = shift(sources[RED]);
+        this.greenShift = shift(sources[GREEN]);
+        this.blueShift = shift(sources[BLUE]);
+        this.rowKernel = rowKernel;
+    }
+
+    static ChannelLut of(IntUnaryOperator mapping) {
+        return of(mapping, mapping, mapping);
+    }
+
+    static ChannelLut of(IntUnaryOperator red, IntUnaryOperator green, IntUnaryOperator blue) {
+        return new ChannelLut(new int[][] { table(red), table(green), table(blue) }, new int[] { RED, GREEN, BLUE });
+    }
+
+    static ChannelLut route(int redSource, int greenSource, int blueSource) {
+        IntUnaryOperator identity = IntUnaryOperator.identity();
+        return new ChannelLut(new int[][] { table(identity), table(identity), table(identity) },
+                new int[] { redSource, greenSource, blueSource });
+    }
+
+    @Override
+    public int apply(int argb) {
+        return 0xFF000000
+                | redTable[(argb >>> redShift) & 0xFF]
+                | greenTable[(argb >>> greenShift) & 0xFF]
+                | blueTable[(argb >>> blueShift) & 0xFF];
+    }
+
+    @Override
+    public void applyRow(int[] source, int[] target, int from, int to) {
+        if (rowKernel == null) {
+            ImageFilterProcessor.PixelTransformer.super.applyRow(source, target, from, to);
+        } else {
+            rowKernel.apply(source, target, from, to);
+        }
+    }
+
+    /**
+     * LUTs composed from it go back to the tables.
+     */
+    ChannelLut withRowKernel(PointKernels.RowKernel rowKernel) {
+        return new ChannelLut(tables, sources, rowKernel);
+    }
+
+    @Override
+    public ImageFilterProcessor.PixelTransformer andThen(ImageFilterProcessor.PixelTransformer next) {
+        return next instanceof ChannelLut ? then((ChannelLut) next) : ImageFilterProcessor.PixelTransformer.super.andThen(next);
+    }
+
+    ChannelLut then(ChannelLut next) {
+        int[][] composed = new int[3][256];
+        int[] composedSources = new int[3];
+        for (int channel = RED; channel <= BLUE; channel++) {
+            int via = next.sources[channel];
+            composedSources[channel] = sources[via];
+            for (int value = 0; value < 256; value++) {
+                composed[channel][value] = next.tables[channel][tables[via][value]];
+            }
+        }
+        return new ChannelLut(composed, composedSources);
+    }
+
+    private static int[] table(IntUnaryOperator mapping) {
+        int[] table = new int[256];
+        for (int value = 0; value < 256; value++) {
+            int mapped = mapping.applyAsInt(value);
+            if (mapped < 0 || mapped > 255) {
+                throw new IllegalArgumentException("LUT entry out of range for " + value + ": " + mapped);
+            }
+            table[value] = mapped;
+        }
+        return table;
+    }
+
+    private static int[] shifted(int[] table, int channel) {
+        int[] shifted = new int[256];
+        for (int value = 0; value < 256; value++) {
+            shifted[value] = table[value] << shift(channel);
+        }
+        return shifted;
+    }
+
+    private static int shift(int channel) {
+        return 16 - 8 * channel;
+    }
+}
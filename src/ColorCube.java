@@ -0,0 +1,194 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * 3D color lookup table applied with trilinear interpolation. Grid coordinates and weights for every 8-bit input
+ * value are precomputed, so a pixel costs eight table reads and no divisions.
+ */
+final class ColorCube implements ImageFilterProcessor.PixelTransformer {
+
+    private static final int WEIGHT_BITS = 8;
+    private static final int WEIGHT_ONE = 1 << WEIGHT_BITS;
+
+    private final int size;
+    private final int[] grid;
+    private final int[] lowerIndex;
+    private final int[] weight;
+    private String digest;
+
+    /**
+     * Each channel may have a domain of its own, so {@code grid} holds red, green and blue positions one after the other.
+     */
+    private ColorCube(int size, int[] grid, double[] domainMin, double[] domainMax) {
+        this.size = size;
+        this.grid = grid;
+        this.lowerIndex = new int[3 * 256];
+        this.weight = new int[3 * 256];
+        for (int channel = 0; channel < 3; channel++) {
+            for (int value = 0; value < 256; value++) {
+                double position = (value / 255.0 - domainMin[channel]) / (domainMax[channel] - domainMin[channel]) * (size - 1);
+                position = Math.max(0, Math.min(size - 1, position));
+                int lower = Math.min(size - 2, (int) position);
+                lowerIndex[channel * 256 + value] = lower;
+                weight[channel * 256 + value] = (int) Math.round((position - lower) * WEIGHT_ONE);
+            }
+        }
+    }
+
+    static ColorCube compile(ImageFilterProcessor.PixelTransformer transformer, int size) {
+        if (size < 2 || size > 256) {
+            throw new IllegalArgumentException("Cube size must be between 2 and 256: " + size);
+        }
+        int[] grid = new int[size * size * size];
+        for (int b = 0; b < size; b++) {
+            for (int g = 0; g < size; g++) {
+                for (int r = 0; r < size; r++) {
+                    int argb = ImageFilterProcessor.rgb(r * 255 / (size - 1), g * 255 / (size - 1), b * 255 / (size - 1));
+                    grid[(b * size + g) * size + r] = transformer.apply(argb) & 0xFFFFFF;
+                }
+            }
+        }
+        return new ColorCube(size, grid, new double[] { 0, 0, 0 }, new double[] { 1, 1, 1 });
+    }
+
+    /**
+     * Red varies fastest in the data lines, as the format specifies.
+     */
+    static ColorCube load(Path file) throws IOException {
+        int size = 0, count = 0;
+        double[] domainMin = { 0, 0, 0 }, domainMax = { 1, 1, 1 };
+        int[] grid = null;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#") || line.startsWith("TITLE")) {
+                    continue;
+                }
+                String[] parts = line.split("\\s+");
+                String keyword = parts[0].toUpperCase(Locale.ROOT);
+                try {
+                    if (keyword.equals("LUT_3D_SIZE")) {
+                        size = Integer.parseInt(parts[1]);
+                        if (size < 2 || size > 256) {
+                            throw new IOException("Unsupported LUT_3D_SIZE " + size + " in " + file);
+                        }
+                        grid = new int[size * size * size];
+                    } else if (keyword.equals("DOMAIN_MIN")) {
+                        domainMin = domain(parts);
+                    } else if (keyword.equals("DOMAIN_MAX")) {
+                        domainMax = domain(parts);
+                    } else if (keyword.equals("LUT_1D_SIZE")) {
+                        throw new IOException("1D .cube LUTs are not supported: " + file);
+                    } else if (Character.isLetter(keyword.charAt(0))) {
+                        continue;
+                    } else {
+                        if (grid == null) {
+                            throw new IOException("Data before LUT_3D_SIZE in " + file);
+                        }
+                        if (count == grid.length) {
+                            throw new IOException("Too many entries in " + file);
+                        }
+                        grid[count++] = ImageFilterProcessor.rgb(channel(parts[0]), channel(parts[1]), channel(parts[2])) & 0xFFFFFF;
+                    }
+                } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                    throw new IOException("Malformed line in " + file + ": " + line, e);
+                }
+            }
+        }
+        if (grid == null || count != grid.length) {
+            throw new IOException("Incomplete 3D LUT in " + file);
+        }
+        for (int channel = 0; channel < 3; channel++) {
+            if (domainMax[channel] <= domainMin[channel]) {
+                throw new IOException("Invalid domain in " + file);
+            }
+        }
+        return new ColorCube(size, grid, domainMin, domainMax);
+    }
+
+    /**
+     * A single value applies to all three channels.
+     */
+    private static double[] domain(String[] parts) {
+        double[] domain = new double[3];
+        for (int channel = 0; channel < 3; channel++) {
+            domain[channel] = Double.parseDouble(parts[parts.length == 2 ? 1 : 1 + channel]);
+        }
+        return domain;
+    }
+
+    private static int channel(String value) {
+        return (int) Math.round(Math.max(0, Math.min(1, Double.parseDouble(value))) * 255);
+    }
+
+    @Override
+    public int apply(int argb) {
+        int red = ImageFilterProcessor.red(argb), green = ImageFilterProcessor.green(argb), blue = ImageFilterProcessor.blue(argb);
+        int r = lowerIndex[red], g = lowerIndex[256 + green], b = lowerIndex[512 + blue];
+        int wr = weight[red], wg = weight[256 + green], wb = weight[512 + blue];
+
+        int base = (b * size + g) * size + r;
+        int plane = size * size;
+        int c000 = grid[base], c100 = grid[base + 1];
+        int c010 = grid[base + size], c110 = grid[base + size + 1];
+        int c001 = grid[base + plane], c101 = grid[base + plane + 1];
+        int c011 = grid[base + plane + size], c111 = grid[base + plane + size + 1];
+
+        int result = 0xFF000000;
+        for (int shift = 16; shift >= 0; shift -= 8) {
+            int v00 = lerp(scaled(c000, shift), scaled(c100, shift), wr);
+            int v10 = lerp(scaled(c010, shift), scaled(c110, shift), wr);
+            int v01 = lerp(scaled(c001, shift), scaled(c101, shift), wr);
+            int v11 = lerp(scaled(c011, shift), scaled(c111, shift), wr);
+            int v0 = lerp(v00, v10, wg);
+            int v1 = lerp(v01, v11, wg);
+            result |= ((lerp(v0, v1, wb) + (WEIGHT_ONE >> 1)) >> WEIGHT_BITS) << shift;
+        }
+        return result;
+    }
+
+    /**
+     * Cubes are equal when they map every color the same way, whichever file or filter they came from.
+     */
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof ColorCube)) {
+            return false;
+        }
+        ColorCube cube = (ColorCube) other;
+        return size == cube.size && Arrays.equals(grid, cube.grid)
+                && Arrays.equals(lowerIndex, cube.lowerIndex) && Arrays.equals(weight, cube.weight);
+    }
+
+    String digest() {
+        if (digest == null) {
+            ByteBuffer bytes = ByteBuffer.allocate(4 * (1 + grid.length + lowerIndex.length + weight.length));
+            bytes.asIntBuffer().put(size).put(grid).put(lowerIndex).put(weight);
+            digest = ResultCache.sha256(bytes.array());
+        }
+        return digest;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * Arrays.hashCode(grid) + Arrays.hashCode(lowerIndex)) + Arrays.hashCode(weight);
+    }
+
+    /**
+     * Keeps {@link #WEIGHT_BITS} extra fraction bits until the last axis is blended.
+     */
+    private static int scaled(int rgb, int shift) {
+        return ((rgb >> shift) & 0xFF) << WEIGHT_BITS;
+    }
+
+    private static int lerp(int from, int to, int weight) {
+        return from + (((to - from) * weight) >> WEIGHT_BITS);
+    }
+}
@@ -1,18 +1,27 @@
 import javax.swing.*;
+import java.awt.*;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
+import java.awt.event.MouseMotionListener;
+import java.awt.event.MouseWheelEvent;
+import java.awt.event.MouseWheelListener;
 
-public class Control implements MouseListener {
+public class Control implements MouseListener, MouseMotionListener, MouseWheelListener {
 
     private final MainPanel panel;
+    private Point dragStart;
 
     public Control(MainPanel panel) {
         this.panel = panel;
     }
 
+    private static boolean onImage(MouseEvent e) {
+        return e.getX() > MainPanel.IMAGE_X && e.getX() < MainPanel.IMAGE_WIDTH + MainPanel.IMAGE_X && e.getY() > MainPanel.IMAGE_Y && e.getY() < MainPanel.IMAGE_HEIGHT + MainPanel.IMAGE_Y;
+    }
+
     @Override
     public void mouseClicked(MouseEvent e) {
-        if (e.getX() > MainPanel.IMAGE_X && e.getX() < MainPanel.IMAGE_WIDTH + MainPanel.IMAGE_X && e.getY() > MainPanel.IMAGE_Y && e.getY() < MainPanel.IMAGE_HEIGHT + MainPanel.IMAGE_Y) {
+        if (onImage(e)) {
             if (SwingUtilities.isLeftMouseButton(e)) {
                 panel.addPoint(e.getX(), e.getY());
             } else if (SwingUtilities.isRightMouseButton(e)) {
@@ -23,12 +32,12 @@ public class Control implements MouseListener {
 
     @Override
     public void mousePressed(MouseEvent e) {
-
+        dragStart = onImage(e) ? e.getPoint() : null;
     }
 
     @Override
     public void mouseReleased(MouseEvent e) {
-
+        dragStart = null;
     }
 
     @Override
@@ -40,4 +49,24 @@ public class Control implements MouseListener {
     public void mouseExited(MouseEvent e) {
 
     }
+
+    @Override
+    public void mouseDragged(MouseEvent e) {
+        if (dragStart != null) {
+            panel.pan(e.getX() - dragStart.x, e.getY() - dragStart.y);
+            dragStart = e.getPoint();
+        }
+    }
+
+    @Override
+    public void mouseMoved(MouseEvent e) {
+
+    }
+
+    @Override
+    public void mouseWheelMoved(MouseWheelEvent e) {
+        if (onImage(e)) {
+            panel.zoom(e.getX(), e.getY(), e.getPreciseWheelRotation());
+        }
+    }
 }
@@ -0,0 +1,32 @@
+public enum EdgeMode {
+
+    /**
+     * Averages only the pixels inside the image.
+     */
+    CROP,
+    CLAMP,
+    MIRROR,
+    WRAP;
+
+    /**
+     * -1 when the sample is cropped.
+     */
+    int map(int index, int length) {
+        if (index >= 0 && index < length) {
+            return index;
+        }
+        switch (this) {
+            case CLAMP:
+                return index < 0 ? 0 : length - 1;
+            case MIRROR: {
+                int period = 2 * length;
+                int folded = Math.floorMod(index, period);
+                return folded < length ? folded : period - 1 - folded;
+            }
+            case WRAP:
+                return Math.floorMod(index, length);
+            default:
+                return -1;
+        }
+    }
+}
@@ -0,0 +1,386 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The edits made on the preview, replayed lazily on the original image for display at any zoom level.
+ * Tiles are evaluated only when asked for and memoized up to a byte budget, keyed by the edits that produced them,
+ * so changing an edit recomputes only the tiles after it.
+ */
+final class EditGraph {
+
+    static final int TILE_SIZE = 256;
+
+    private final int width;
+    private final int height;
+    private final boolean alpha;
+    private final SourceReader source;
+    private final long memoryBudget;
+    private final LinkedHashMap<String, int[]> tiles = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Integer, Level> levels = new HashMap<>();
+    private List<Edit> edits = new ArrayList<>();
+    private long memoryBytes;
+
+    private EditGraph(int width, int height, boolean alpha, SourceReader source, long memoryBudget) {
+        if (memoryBudget < 0) {
+            throw new IllegalArgumentException("Memory budget must not be negative: " + memoryBudget);
+        }
+        this.width = width;
+        this.height = height;
+        this.alpha = alpha;
+        this.source = source;
+        this.memoryBudget = memoryBudget;
+    }
+
+    static EditGraph of(BufferedImage image, long memoryBudget) {
+        PackedRaster raster = PackedRaster.of(image);
+        return new EditGraph(raster.width, raster.height, image.getColorModel().hasAlpha(), raster::read, memoryBudget);
+    }
+
+    static EditGraph of(TiledImageStore store, long memoryBudget) {
+        return new EditGraph(store.width, store.height, store.alpha, area -> {
+            try {
+                return store.read(area);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not read image tile", e);
+            }
+        }, memoryBudget);
+    }
+
+    synchronized void setEdits(List<Edit> edits) {
+        this.edits = new ArrayList<>(edits);
+        levels.clear();
+    }
+
+    synchronized Level level(int level) {
+        if (level < 0 || level > 30) {
+            throw new IllegalArgumentException("Invalid zoom level: " + level);
+        }
+        return levels.computeIfAbsent(level, Level::new);
+    }
+
+    synchronized long memoryBytes() {
+        return memoryBytes;
+    }
+
+    private static int scaledSize(int size, int level) {
+        return (int) ((size + (1L << level) - 1) >> level);
+    }
+
+    private int[] sourceTile(int level, int column, int row) {
+        String key = "s" + level + ":" + column + "," + row;
+        int[] tile = get(key);
+        if (tile != null) {
+            return tile;
+        }
+        int levelWidth = scaledSize(width, level), levelHeight = scaledSize(height, level);
+        Rectangle bounds = tileBounds(column, row, levelWidth, levelHeight);
+        if (level == 0) {
+            tile = source.read(bounds);
+        } else {
+            Rectangle below = new Rectangle(2 * bounds.x, 2 * bounds.y, 2 * bounds.width, 2 * bounds.height)
+                    .intersection(new Rectangle(scaledSize(width, level - 1), scaledSize(height, level - 1)));
+            int[] pixels = read(below, scaledSize(width, level - 1), (c, r) -> sourceTile(level - 1, c, r));
+            tile = halve(pixels, below.width, below.height, bounds.width, bounds.height);
+        }
+        put(key, tile);
+        return tile;
+    }
+
+    /**
+     * Blocks cut by an odd edge average the pixels they have.
+     */
+    private static int[] halve(int[] pixels, int width, int height, int targetWidth, int targetHeight) {
+        int[] target = new int[targetWidth * targetHeight];
+        for (int y = 0; y < targetHeight; y++) {
+            int top = 2 * y * width, bottom = Math.min(2 * y + 1, height - 1) * width;
+            for (int x = 0; x < targetWidth; x++) {
+                int left = 2 * x, right = Math.min(2 * x + 1, width - 1);
+                int p = pixels[top + left], q = pixels[top + right], r = pixels[bottom + left], s = pixels[bottom + right];
+                int argb = 0;
+                for (int shift = 0; shift < 32; shift += 8) {
+                    int sum = (p >>> shift & 0xFF) + (q >>> shift & 0xFF) + (r >>> shift & 0xFF) + (s >>> shift & 0xFF);
+                    argb |= (sum + 2) >> 2 << shift;
+                }
+                target[y * targetWidth + x] = argb;
+            }
+        }
+        return target;
+    }
+
+    private static Rectangle tileBounds(int column, int row, int width, int height) {
+        int x = column * TILE_SIZE, y = row * TILE_SIZE;
+        return new Rectangle(x, y, Math.min(TILE_SIZE, width - x), Math.min(TILE_SIZE, height - y));
+    }
+
+    private static int[] read(Rectangle area, int width, TileSource tiles) {
+        int firstColumn = area.x / TILE_SIZE, lastColumn = (area.x + area.width - 1) / TILE_SIZE;
+        int firstRow = area.y / TILE_SIZE, lastRow = (area.y + area.height - 1) / TILE_SIZE;
+        if (firstColumn == lastColumn && firstRow == lastRow && area.x % TILE_SIZE == 0 && area.y % TILE_SIZE == 0
+                && area.width == Math.min(TILE_SIZE, width - area.x)) {
+            int[] tile = tiles.get(firstColumn, firstRow);
+            if (tile.length == area.width * area.height) {
+                return tile;
+            }
+        }
+        int[] pixels = new int[area.width * area.height];
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                int[] tile = tiles.get(column, row);
+                int tileX = column * TILE_SIZE, tileY = row * TILE_SIZE, tileWidth = Math.min(TILE_SIZE, width - tileX);
+                Rectangle overlap = area.intersection(new Rectangle(tileX, tileY, tileWidth, TILE_SIZE));
+                for (int y = overlap.y; y < overlap.y + overlap.height; y++) {
+                    System.arraycopy(tile, (y - tileY) * tileWidth + overlap.x - tileX,
+                            pixels, (y - area.y) * area.width + overlap.x - area.x, overlap.width);
+                }
+            }
+        }
+        return pixels;
+    }
+
+    private synchronized int[] get(String key) {
+        return tiles.get(key);
+    }
+
+    private synchronized void put(String key, int[] tile) {
+        if (4L * tile.length > memoryBudget) {
+            return;
+        }
+        int[] previous = tiles.put(key, tile);
+        memoryBytes += 4L * tile.length - (previous == null ? 0 : 4L * previous.length);
+        Iterator<int[]> eldest = tiles.values().iterator();
+        while (memoryBytes > memoryBudget) {
+            memoryBytes -= 4L * eldest.next().length;
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Node 0 is the source and node {@code i + 1} the output of edit {@code i}; crops and quarter turns give nodes
+     * their own sizes.
+     */
+    final class Level {
+
+        final int level;
+        private final int[] widths;
+        private final int[] heights;
+        private final FilterStep[] steps;
+        private final Region[] regions;
+        private final GeometricTransform[] views;
+        private final String[] keys;
+
+        private Level(int level) {
+            this.level = level;
+            int count = edits.size();
+            widths = new int[count + 1];
+            heights = new int[count + 1];
+            steps = new FilterStep[count];
+            regions = new Region[count];
+            views = new GeometricTransform[count];
+            keys = new String[count + 1];
+            widths[0] = scaledSize(width, level);
+            heights[0] = scaledSize(height, level);
+            keys[0] = "s" + level;
+            for (int i = 0; i < count; i++) {
+                Edit edit = edits.get(i);
+                steps[i] = edit.step(widths[i], heights[i]);
+                regions[i] = edit.region(widths[i], heights[i]);
+                widths[i + 1] = widths[i];
+                heights[i + 1] = heights[i];
+                boolean inside = regions[i] == null || !regions[i].clip(widths[i], heights[i]).isEmpty();
+                if (steps[i].getKind() == FilterKind.GEOMETRIC && (inside || steps[i].reshapes())) {
+                    views[i] = steps[i].view(widths[i], heights[i], regions[i]);
+                    if (regions[i] == null || steps[i].reshapes()) {
+                        widths[i + 1] = views[i].width;
+                        heights[i + 1] = views[i].height;
+                    }
+                }
+                keys[i + 1] = keys[i] + ">" + steps[i].cacheKey() + "@" + (regions[i] == null ? "all" : regions[i].cacheKey());
+            }
+        }
+
+        int width() {
+            return widths[steps.length];
+        }
+
+        int height() {
+            return heights[steps.length];
+        }
+
+        int columns() {
+            return (width() + TILE_SIZE - 1) / TILE_SIZE;
+        }
+
+        int rows() {
+            return (height() + TILE_SIZE - 1) / TILE_SIZE;
+        }
+
+        Rectangle tileBounds(int column, int row) {
+            return EditGraph.tileBounds(column, row, width(), height());
+        }
+
+        BufferedImage cachedTile(int column, int row) {
+            int[] tile = get(key(steps.length, column, row));
+            return tile == null ? null : image(tile, tileBounds(column, row));
+        }
+
+        /**
+         * The image shares the memoized pixels and must not be modified.
+         */
+        BufferedImage tile(int column, int row) {
+            return image(tile(steps.length, column, row), tileBounds(column, row));
+        }
+
+        int[] read(Rectangle area) {
+            return read(steps.length, area);
+        }
+
+        private BufferedImage image(int[] tile, Rectangle bounds) {
+            return PackedRaster.wrap(tile, bounds.width, bounds.height, alpha);
+        }
+
+        private String key(int node, int column, int row) {
+            return keys[node] + ":" + column + "," + row;
+        }
+
+        private int[] read(int node, Rectangle area) {
+            return EditGraph.read(area, widths[node], (column, row) -> tile(node, column, row));
+        }
+
+        private int[] tile(int node, int column, int row) {
+            if (node == 0) {
+                return sourceTile(level, column, row);
+            }
+            String key = key(node, column, row);
+            int[] tile = get(key);
+            if (tile == null) {
+                tile = compute(node - 1, EditGraph.tileBounds(column, row, widths[node], heights[node]));
+                put(key, tile);
+            }
+            return tile;
+        }
+
+        private int[] compute(int i, Rectangle bounds) {
+            FilterStep step = steps[i];
+            Region region = regions[i];
+            GeometricTransform view = views[i];
+            if (view != null && (region == null || step.reshapes())) {
+                Rectangle source = view.sourceBounds(bounds);
+                return view.read(read(i, source), source, bounds);
+            }
+            Rectangle input = new Rectangle(widths[i], heights[i]);
+            Rectangle area = region == null ? bounds : bounds.intersection(region.clip(widths[i], heights[i]));
+            if (area.isEmpty()) {
+                return read(i, bounds);
+            }
+            if (view != null) {
+                return transformWithin(i, bounds, area);
+            }
+            if (step.getKind() == FilterKind.ADAPTIVE) {
+                step = counted(i);
+            }
+            int halo = step.halo();
+            if (halo < 0) {
+                throw new UnsupportedOperationException(step.getName() + " needs the whole image and cannot run tile by tile");
+            }
+            Rectangle window = new Rectangle(area);
+            window.grow(halo, halo);
+            window = window.intersection(input).union(bounds);
+            BufferedImage filtered = step.at(window.x, window.y, widths[i], heights[i]).apply(PackedRaster.wrap(read(i, window), window.width, window.height, alpha),
+                    region == null ? null : region.translate(-window.x, -window.y));
+            return PackedRaster.of(filtered).read(new Rectangle(bounds.x - window.x, bounds.y - window.y, bounds.width, bounds.height));
+        }
+
+        private int[] transformWithin(int i, Rectangle bounds, Rectangle area) {
+            Region region = regions[i];
+            Rectangle clip = region.clip(widths[i], heights[i]);
+            Rectangle viewArea = new Rectangle(area.x - clip.x, area.y - clip.y, area.width, area.height);
+            Rectangle source = views[i].sourceBounds(viewArea);
+            int[] shown = views[i].read(read(i, source), source, viewArea);
+            int[] pixels = read(i, bounds).clone();
+            for (int y = area.y; y < area.y + area.height; y++) {
+                for (int x = area.x; x < area.x + area.width; x++) {
+                    if (region.contains(x, y)) {
+                        pixels[(y - bounds.y) * bounds.width + x - bounds.x] = shown[(y - area.y) * area.width + x - area.x];
+                    }
+                }
+            }
+            return pixels;
+        }
+
+        /**
+         * The counted step replaces the edit's, so each level counts the histogram once.
+         */
+        private synchronized FilterStep counted(int i) {
+            if (steps[i].getPointOperation() != null) {
+                return steps[i];
+            }
+            Region region = regions[i];
+            Rectangle area = region == null ? new Rectangle(widths[i], heights[i]) : region.clip(widths[i], heights[i]);
+            Histogram histogram = null;
+            for (int row = area.y / TILE_SIZE; row * TILE_SIZE < area.y + area.height; row++) {
+                for (int column = area.x / TILE_SIZE; column * TILE_SIZE < area.x + area.width; column++) {
+                    Rectangle tileBounds = EditGraph.tileBounds(column, row, widths[i], heights[i]);
+                    Rectangle part = tileBounds.intersection(area);
+                    Histogram tile = Histogram.of(PackedRaster.of(image(tile(i, column, row), tileBounds)),
+                            new Rectangle(part.x - tileBounds.x, part.y - tileBounds.y, part.width, part.height));
+                    histogram = histogram == null ? tile : histogram.plus(tile);
+                }
+            }
+            steps[i] = steps[i].withHistogram(histogram);
+            return steps[i];
+        }
+    }
+
+    static final class Edit {
+
+        final FilterStep step;
+        final Rectangle region;
+        final int previewWidth;
+        final int previewHeight;
+
+        Edit(FilterStep step, Rectangle region, BufferedImage preview) {
+            this.step = step;
+            this.region = region;
+            this.previewWidth = preview.getWidth();
+            this.previewHeight = preview.getHeight();
+        }
+
+        FilterStep step(int width, int height) {
+            double scaleX = width / (double) previewWidth, scaleY = height / (double) previewHeight;
+            return step.scaled(Math.sqrt(scaleX * scaleY));
+        }
+
+        /**
+         * Covers every pixel the preview region partly covers.
+         */
+        Region region(int width, int height) {
+            if (region == null) {
+                return null;
+            }
+            double scaleX = width / (double) previewWidth, scaleY = height / (double) previewHeight;
+            int x = (int) Math.floor(region.x * scaleX);
+            int y = (int) Math.floor(region.y * scaleY);
+            int right = (int) Math.ceil((region.x + region.width) * scaleX);
+            int bottom = (int) Math.ceil((region.y + region.height) * scaleY);
+            return Region.of(new Rectangle(x, y, right - x, bottom - y));
+        }
+    }
+
+    @FunctionalInterface
+    private interface SourceReader {
+        int[] read(Rectangle area);
+    }
+
+    @FunctionalInterface
+    private interface TileSource {
+        int[] get(int column, int row);
+    }
+}
@@ -0,0 +1,370 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Undo/redo history of an image as copy-on-write tiles kept in the image's own format. Only the tiles a step
+ * changed are stored again; over the memory budget the oldest versions are spilled to a file, or dropped.
+ */
+final class EditHistory<E> {
+
+    static final int TILE_SIZE = 64;
+    private static final long SLOT_BYTES = 4L * TILE_SIZE * TILE_SIZE;
+
+    private final long memoryBudget;
+    private final Path spillDirectory;
+    private final List<Version<E>> versions = new ArrayList<>();
+    private final List<E> droppedEdits = new ArrayList<>();
+    private int position;
+    private BufferedImage current;
+    private long memoryBytes;
+    private FileChannel spill;
+    private long spillEnd;
+    private final Deque<Long> freeSlots = new ArrayDeque<>();
+
+    /**
+     * @param spillDirectory {@code null} to drop the oldest versions instead
+     */
+    EditHistory(long memoryBudget, Path spillDirectory) {
+        if (memoryBudget < 0) {
+            throw new IllegalArgumentException("Memory budget must not be negative: " + memoryBudget);
+        }
+        this.memoryBudget = memoryBudget;
+        this.spillDirectory = spillDirectory;
+    }
+
+    void reset(BufferedImage image) {
+        clear();
+        current = PixelLayout.copy(PackedRaster.toSupportedType(image));
+        versions.add(storeAll(current, null));
+        enforceBudget();
+    }
+
+    void clear() {
+        versions.clear();
+        droppedEdits.clear();
+        position = 0;
+        current = null;
+        memoryBytes = 0;
+        if (spill != null) {
+            try {
+                spill.close();
+            } catch (IOException ignored) {
+            }
+            spill = null;
+            spillEnd = 0;
+            freeSlots.clear();
+        }
+    }
+
+    /**
+     * Updated in place by {@link #undo()} and {@link #redo()}, so nothing else may be reading it then.
+     */
+    BufferedImage current() {
+        return current;
+    }
+
+    void detach() {
+        if (current != null) {
+            current = PixelLayout.copy(current);
+        }
+    }
+
+    /**
+     * The history takes ownership of the image.
+     */
+    void commit(BufferedImage image, E edit) {
+        if (current == null) {
+            throw new IllegalStateException("History has no image");
+        }
+        while (versions.size() > position + 1) {
+            Version<E> discarded = versions.remove(versions.size() - 1);
+            for (int index : discarded.changed) {
+                discard(discarded.tiles[index]);
+            }
+        }
+
+        image = PackedRaster.toSupportedType(image);
+        if (image.getWidth() != current.getWidth() || image.getHeight() != current.getHeight() || image.getType() != current.getType()) {
+            versions.add(storeAll(image, edit));
+            position++;
+            current = image;
+            enforceBudget();
+            return;
+        }
+        PixelLayout previous = PixelLayout.of(current);
+        PixelLayout next = PixelLayout.of(image);
+        Tile[] tiles = versions.get(position).tiles.clone();
+        int[] changed = new int[tiles.length];
+        int changedCount = 0;
+        for (int index = 0; index < tiles.length; index++) {
+            if (!sameTile(previous, next, image, index)) {
+                tiles[index] = store(readTile(next, image, index));
+                changed[changedCount++] = index;
+            }
+        }
+        versions.add(new Version<>(image.getWidth(), image.getHeight(), image.getType(), tiles, Arrays.copyOf(changed, changedCount), edit));
+        position++;
+        current = image;
+        enforceBudget();
+    }
+
+    boolean canUndo() {
+        return position > 0;
+    }
+
+    boolean canRedo() {
+        return position + 1 < versions.size();
+    }
+
+    BufferedImage undo() {
+        if (!canUndo()) {
+            throw new IllegalStateException("Nothing to undo");
+        }
+        restore(versions.get(position - 1), versions.get(position).changed);
+        position--;
+        return current;
+    }
+
+    BufferedImage redo() {
+        if (!canRedo()) {
+            throw new IllegalStateException("Nothing to redo");
+        }
+        Version<E> next = versions.get(position + 1);
+        restore(next, next.changed);
+        position++;
+        return current;
+    }
+
+    List<E> edits() {
+        List<E> edits = new ArrayList<>(droppedEdits);
+        for (int i = 1; i <= position; i++) {
+            edits.add(versions.get(i).edit);
+        }
+        return edits;
+    }
+
+    long memoryBytes() {
+        return memoryBytes;
+    }
+
+    private Version<E> storeAll(BufferedImage image, E edit) {
+        PixelLayout layout = PixelLayout.of(image);
+        int count = columns(image.getWidth()) * ((image.getHeight() + TILE_SIZE - 1) / TILE_SIZE);
+        Tile[] tiles = new Tile[count];
+        int[] changed = new int[count];
+        for (int index = 0; index < count; index++) {
+            tiles[index] = store(readTile(layout, image, index));
+            changed[index] = index;
+        }
+        return new Version<>(image.getWidth(), image.getHeight(), image.getType(), tiles, changed, edit);
+    }
+
+    private void restore(Version<E> version, int[] indices) {
+        BufferedImage target = current;
+        if (target.getWidth() != version.width || target.getHeight() != version.height || target.getType() != version.type) {
+            target = new BufferedImage(version.width, version.height, version.type);
+            indices = new int[version.tiles.length];
+            Arrays.setAll(indices, index -> index);
+        }
+        PixelLayout layout = PixelLayout.of(target);
+        for (int index : indices) {
+            writeTile(layout, target, index, load(version.tiles[index], layout));
+        }
+        current = target;
+    }
+
+    private boolean sameTile(PixelLayout a, PixelLayout b, BufferedImage image, int index) {
+        Rectangle tile = tile(image, index);
+        int length = a.length(tile.width);
+        for (int y = tile.y; y < tile.y + tile.height; y++) {
+            int start = a.offset(tile.x, y);
+            boolean same = a.data instanceof int[]
+                    ? Arrays.equals((int[]) a.data, start, start + length, (int[]) b.data, start, start + length)
+                    : Arrays.equals((byte[]) a.data, start, start + length, (byte[]) b.data, start, start + length);
+            if (!same) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Object readTile(PixelLayout layout, BufferedImage image, int index) {
+        Rectangle tile = tile(image, index);
+        int length = layout.length(tile.width);
+        Object pixels = layout.allocate(length * tile.height);
+        for (int row = 0; row < tile.height; row++) {
+            System.arraycopy(layout.data, layout.offset(tile.x, tile.y + row), pixels, row * length, length);
+        }
+        return pixels;
+    }
+
+    private void writeTile(PixelLayout layout, BufferedImage image, int index, Object pixels) {
+        Rectangle tile = tile(image, index);
+        int length = layout.length(tile.width);
+        for (int row = 0; row < tile.height; row++) {
+            System.arraycopy(pixels, row * length, layout.data, layout.offset(tile.x, tile.y + row), length);
+        }
+    }
+
+    private static Rectangle tile(BufferedImage image, int index) {
+        int columns = columns(image.getWidth());
+        int x = (index % columns) * TILE_SIZE, y = (index / columns) * TILE_SIZE;
+        return new Rectangle(x, y, Math.min(TILE_SIZE, image.getWidth() - x), Math.min(TILE_SIZE, image.getHeight() - y));
+    }
+
+    private static int columns(int width) {
+        return (width + TILE_SIZE - 1) / TILE_SIZE;
+    }
+
+    private Tile store(Object pixels) {
+        memoryBytes += PixelLayout.bytes(pixels);
+        return new Tile(pixels);
+    }
+
+    private void release(Tile tile) {
+        if (tile.pixels != null) {
+            memoryBytes -= PixelLayout.bytes(tile.pixels);
+            tile.pixels = null;
+        }
+    }
+
+    private void discard(Tile tile) {
+        release(tile);
+        if (tile.offset >= 0) {
+            freeSlots.push(tile.offset);
+            tile.offset = -1;
+        }
+    }
+
+    /**
+     * The current version is never dropped.
+     */
+    private void enforceBudget() {
+        if (spillDirectory == null) {
+            while (memoryBytes > memoryBudget && position > 0) {
+                dropOldest();
+            }
+            return;
+        }
+        for (int i = 0; i < versions.size() && memoryBytes > memoryBudget; i++) {
+            Version<E> version = versions.get(i);
+            for (int index : version.changed) {
+                if (memoryBytes <= memoryBudget) {
+                    return;
+                }
+                spill(version.tiles[index]);
+            }
+        }
+    }
+
+    private void dropOldest() {
+        Version<E> oldest = versions.remove(0);
+        Version<E> next = versions.get(0);
+        for (int index : next.changed) {
+            discard(oldest.tiles[index]);
+        }
+        int[] all = new int[next.tiles.length];
+        Arrays.setAll(all, index -> index);
+        droppedEdits.add(next.edit);
+        versions.set(0, new Version<>(next.width, next.height, next.type, next.tiles, all, null));
+        position--;
+    }
+
+    private void spill(Tile tile) {
+        if (tile.pixels == null) {
+            return;
+        }
+        try {
+            if (spill == null) {
+                Path file = Files.createTempFile(spillDirectory, "history", ".tiles");
+                spill = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+            }
+            ByteBuffer buffer;
+            if (tile.pixels instanceof int[]) {
+                buffer = ByteBuffer.allocate(4 * ((int[]) tile.pixels).length);
+                buffer.asIntBuffer().put((int[]) tile.pixels);
+            } else {
+                buffer = ByteBuffer.wrap((byte[]) tile.pixels);
+            }
+            long offset = freeSlots.isEmpty() ? spillEnd : freeSlots.pop();
+            if (offset == spillEnd) {
+                spillEnd += SLOT_BYTES;
+            }
+            while (buffer.hasRemaining()) {
+                spill.write(buffer, offset + buffer.position());
+            }
+            tile.length = PixelLayout.length(tile.pixels);
+            tile.offset = offset;
+            release(tile);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not spill history tile", e);
+        }
+    }
+
+    /**
+     * A spilled tile is read back in the format of {@code layout}, which is that of its version.
+     */
+    private Object load(Tile tile, PixelLayout layout) {
+        if (tile.pixels != null) {
+            return tile.pixels;
+        }
+        try {
+            Object pixels = layout.allocate(tile.length);
+            ByteBuffer buffer = pixels instanceof int[] ? ByteBuffer.allocate(4 * tile.length) : ByteBuffer.wrap((byte[]) pixels);
+            while (buffer.hasRemaining()) {
+                if (spill.read(buffer, tile.offset + buffer.position()) < 0) {
+                    throw new IOException("Spill file truncated");
+                }
+            }
+            if (pixels instanceof int[]) {
+                buffer.flip();
+                buffer.asIntBuffer().get((int[]) pixels);
+            }
+            return pixels;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read spilled history tile", e);
+        }
+    }
+
+    private static final class Tile {
+
+        Object pixels;
+        long offset = -1;
+        int length;
+
+        Tile(Object pixels) {
+            this.pixels = pixels;
+        }
+    }
+
+    private static final class Version<E> {
+
+        final int width;
+        final int height;
+        final int type;
+        final Tile[] tiles;
+        final int[] changed;
+        final E edit;
+
+        Version(int width, int height, int type, Tile[] tiles, int[] changed, E edit) {
+            this.width = width;
+            this.height = height;
+            this.type = type;
+            this.tiles = tiles;
+            this.changed = changed;
+            this.edit = edit;
+        }
+    }
+}
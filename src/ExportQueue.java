@@ -0,0 +1,66 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs exports on a few writer threads. Submitting past {@code capacity} fails right away instead of waiting,
+ * so a caller on the event dispatch thread never blocks.
+ */
+final class ExportQueue implements Closeable {
+
+    private final ExecutorService writers;
+    private final Semaphore slots;
+
+    ExportQueue(int writers, int capacity) {
+        if (writers < 1 || capacity < writers) {
+            throw new IllegalArgumentException("Need at least one writer and a capacity of at least the writers: " + writers + ", " + capacity);
+        }
+        this.writers = Executors.newFixedThreadPool(writers, task -> {
+            Thread thread = new Thread(task, "export");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.slots = new Semaphore(capacity);
+    }
+
+    /**
+     * @throws IllegalStateException if {@code capacity} exports are already pending
+     */
+    CompletableFuture<Long> submit(Export export) {
+        if (!slots.tryAcquire()) {
+            throw new IllegalStateException("Export queue full");
+        }
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return export.run();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, writers).whenComplete((size, error) -> slots.release());
+        } catch (RuntimeException e) {
+            slots.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() {
+        writers.shutdown();
+        try {
+            writers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @FunctionalInterface
+    interface Export {
+        long run() throws IOException;
+    }
+}
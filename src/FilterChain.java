@@ -0,0 +1,283 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+final class FilterChain {
+
+    private final List<FilterStep> steps;
+
+    FilterChain(List<FilterStep> steps) {
+        this.steps = Collections.unmodifiableList(new ArrayList<>(steps));
+    }
+
+    static FilterChain parse(String spec) {
+        List<FilterStep> steps = new ArrayList<>();
+        for (String step : spec.split(",")) {
+            if (!step.isBlank()) {
+                steps.add(FilterStep.parse(step));
+            }
+        }
+        if (steps.isEmpty()) {
+            throw new IllegalArgumentException("Filter chain is empty: " + spec);
+        }
+        return new FilterChain(steps);
+    }
+
+    List<FilterStep> getSteps() {
+        return steps;
+    }
+
+    BufferedImage apply(BufferedImage image) {
+        return apply(image, null);
+    }
+
+    /**
+     * Point steps that follow another step and run in place overwrite that step's output instead of copying it.
+     * Consecutive geometric steps that transform the whole image, or reshape it, compose into one view copied once.
+     */
+    BufferedImage apply(BufferedImage image, Region region) {
+        BufferedImage result = image;
+        List<FilterStep> points = new ArrayList<>();
+        List<FilterStep> views = new ArrayList<>();
+        for (FilterStep step : steps) {
+            boolean point = step.getPointOperation() != null;
+            boolean view = step.getKind() == FilterKind.GEOMETRIC && (region == null || step.reshapes());
+            if (!point && !points.isEmpty()) {
+                result = applyFused(result, result != image, region, points);
+                points.clear();
+            }
+            if (!view && !views.isEmpty()) {
+                result = applyViews(result, region, views);
+                views.clear();
+            }
+            if (point) {
+                points.add(step);
+            } else if (view) {
+                views.add(step);
+            } else {
+                result = step.apply(result, region);
+            }
+        }
+        if (!points.isEmpty()) {
+            result = applyFused(result, result != image, region, points);
+        }
+        return views.isEmpty() ? result : applyViews(result, region, views);
+    }
+
+    /**
+     * @param owned whether {@code image} is an intermediate result of this chain that may be overwritten
+     */
+    private static BufferedImage applyFused(BufferedImage image, boolean owned, Region region, List<FilterStep> points) {
+        RasterFormat format = RasterFormat.of(image);
+        for (FilterStep step : points) {
+            format = step.output(format, region);
+        }
+        // Overwriting needs the result to fit the input's own format, e.g. not a color filter over a gray image.
+        boolean inPlace = owned && format == RasterFormat.of(image) && points.stream().allMatch(FilterStep::runsInPlace);
+        if (points.size() == 1 && !inPlace) {
+            return points.get(0).apply(image, region);
+        }
+        List<ImageFilterProcessor.PixelTransformer> transformers = new ArrayList<>();
+        for (FilterStep step : points) {
+            transformers.add(step.getPointOperation());
+        }
+        String name = points.stream().map(FilterStep::getName).collect(Collectors.joining("+"));
+        FilterMetrics.Timer timer = FilterMetrics.startFilter(name, image, region);
+        BufferedImage result = inPlace
+                ? ImageFilterProcessor.applyPixelFilterInPlace(image, region, fuse(transformers))
+                : ImageFilterProcessor.applyPixelFilter(image, region, fuse(transformers), format);
+        timer.stop();
+        return result;
+    }
+
+    private static BufferedImage applyViews(BufferedImage image, Region region, List<FilterStep> views) {
+        if (views.size() == 1) {
+            return views.get(0).apply(image, region);
+        }
+        GeometricTransform view = GeometricTransform.of(image.getWidth(), image.getHeight());
+        for (FilterStep step : views) {
+            view = view.then(step.view(view.width, view.height, region));
+        }
+        String name = views.stream().map(FilterStep::getName).collect(Collectors.joining("+"));
+        FilterMetrics.Timer timer = FilterMetrics.startFilter(name, image, region);
+        BufferedImage result = view.apply(image);
+        timer.stop();
+        return result;
+    }
+
+    /**
+     * Each tile is filtered together with the halo its steps read, so the result matches filtering the whole image.
+     * An adaptive step starts a new stage, counted over the whole area first.
+     *
+     * @throws UnsupportedOperationException if another step depends on the whole image
+     */
+    TiledImageStore apply(TiledImageStore source, Region region) throws IOException {
+        TiledImageStore result = source;
+        try {
+            int start = 0;
+            while (start < steps.size()) {
+                FilterStep step = steps.get(start);
+                int end = start + 1;
+                TiledImageStore next;
+                if (step.getKind() == FilterKind.GEOMETRIC && region != null && !step.reshapes()) {
+                    next = transformWithin(result, region, step);
+                } else if (step.getKind() == FilterKind.GEOMETRIC) {
+                    while (end < steps.size() && steps.get(end).getKind() == FilterKind.GEOMETRIC && (region == null || steps.get(end).reshapes())) {
+                        end++;
+                    }
+                    next = transform(result, region, steps.subList(start, end));
+                } else {
+                    while (end < steps.size() && steps.get(end).getKind() != FilterKind.GEOMETRIC && steps.get(end).getKind() != FilterKind.ADAPTIVE) {
+                        end++;
+                    }
+                    next = filter(result, region, steps.subList(start, end));
+                }
+                TiledImageStore previous = result;
+                result = next;
+                if (previous != source) {
+                    previous.close();
+                }
+                start = end;
+            }
+            return result;
+        } catch (IOException | RuntimeException e) {
+            if (result != source) {
+                result.close();
+            }
+            throw e;
+        }
+    }
+
+    private static TiledImageStore filter(TiledImageStore source, Region region, List<FilterStep> stage) throws IOException {
+        Rectangle bounds = new Rectangle(source.width, source.height);
+        Rectangle regionBounds = region == null ? bounds : region.clip(source.width, source.height);
+        List<FilterStep> steps = new ArrayList<>(stage);
+        int halo = 0;
+        if (!regionBounds.isEmpty()) {
+            steps.set(0, steps.get(0).withHistogram(Histogram.of(source, regionBounds)));
+            for (FilterStep step : steps) {
+                if (step.halo() < 0) {
+                    throw new UnsupportedOperationException(step.getName() + " needs the whole image and cannot run tile by tile");
+                }
+                halo += step.halo();
+            }
+        }
+
+        TiledImageStore target = source.createCompatible();
+        try {
+            for (int index = 0; index < source.tileCount(); index++) {
+                Rectangle tile = source.tileBounds(index);
+                Rectangle area = tile.intersection(regionBounds);
+                if (area.isEmpty()) {
+                    target.write(tile, source.read(tile));
+                    continue;
+                }
+                Rectangle window = new Rectangle(area);
+                window.grow(halo, halo);
+                window = window.intersection(bounds).union(tile);
+
+                List<FilterStep> local = new ArrayList<>();
+                for (FilterStep step : steps) {
+                    local.add(step.at(window.x, window.y, source.width, source.height));
+                }
+                BufferedImage filtered = new FilterChain(local).apply(source.toImage(window),
+                        region == null ? null : region.translate(-window.x, -window.y));
+                Rectangle tileInWindow = new Rectangle(tile.x - window.x, tile.y - window.y, tile.width, tile.height);
+                target.write(tile, PackedRaster.of(filtered).read(tileInWindow));
+            }
+            return target;
+        } catch (IOException | RuntimeException e) {
+            target.close();
+            throw e;
+        }
+    }
+
+    private static TiledImageStore transform(TiledImageStore source, Region region, List<FilterStep> views) throws IOException {
+        GeometricTransform view = GeometricTransform.of(source.width, source.height);
+        for (FilterStep step : views) {
+            view = view.then(step.view(view.width, view.height, region));
+        }
+        TiledImageStore target = source.createCompatible(view.width, view.height);
+        try {
+            for (int index = 0; index < target.tileCount(); index++) {
+                Rectangle tile = target.tileBounds(index);
+                Rectangle shown = view.sourceBounds(tile);
+                target.write(tile, view.read(source.read(shown), shown, tile));
+            }
+            return target;
+        } catch (IOException | RuntimeException e) {
+            target.close();
+            throw e;
+        }
+    }
+
+    private static TiledImageStore transformWithin(TiledImageStore source, Region region, FilterStep step) throws IOException {
+        Rectangle clip = region.clip(source.width, source.height);
+        GeometricTransform view = clip.isEmpty() ? null : step.view(source.width, source.height, region);
+        TiledImageStore target = source.createCompatible();
+        try {
+            for (int index = 0; index < source.tileCount(); index++) {
+                Rectangle tile = source.tileBounds(index);
+                Rectangle area = tile.intersection(clip);
+                int[] pixels = source.read(tile);
+                if (!area.isEmpty()) {
+                    Rectangle viewArea = new Rectangle(area.x - clip.x, area.y - clip.y, area.width, area.height);
+                    Rectangle shown = view.sourceBounds(viewArea);
+                    int[] moved = view.read(source.read(shown), shown, viewArea);
+                    for (int y = area.y; y < area.y + area.height; y++) {
+                        for (int x = area.x; x < area.x + area.width; x++) {
+                            if (region.contains(x, y)) {
+                                pixels[(y - tile.y) * tile.width + x - tile.x] = moved[(y - area.y) * area.width + x - area.x];
+                            }
+                        }
+                    }
+                }
+                target.write(tile, pixels);
+            }
+            return target;
+        } catch (IOException | RuntimeException e) {
+            target.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Each run of adjacent {@link ChannelLut}s collapses into one table lookup.
+     */
+    static ImageFilterProcessor.PixelTransformer fuse(List<ImageFilterProcessor.PixelTransformer> transformers) {
+        List<ImageFilterProcessor.PixelTransformer> stages = new ArrayList<>();
+        for (ImageFilterProcessor.PixelTransformer transformer : transformers) {
+            int last = stages.size() - 1;
+            if (last >= 0 && stages.get(last) instanceof ChannelLut && transformer instanceof ChannelLut) {
+                stages.set(last, ((ChannelLut) stages.get(last)).then((ChannelLut) transformer));
+            } else {
+                stages.add(transformer);
+            }
+        }
+        return stages.stream().reduce(ImageFilterProcessor.PixelTransformer::andThen).orElse(argb -> argb);
+    }
+
+    /**
+     * {@code null} when a step is not repeatable.
+     */
+    String cacheKey() {
+        StringBuilder key = new StringBuilder();
+        for (FilterStep step : steps) {
+            String stepKey = step.cacheKey();
+            if (stepKey == null) {
+                return null;
+            }
+            key.append(key.length() == 0 ? "" : ",").append(stepKey);
+        }
+        return key.toString();
+    }
+
+    @Override
+    public String toString() {
+        return steps.stream().map(FilterStep::toString).collect(Collectors.joining(","));
+    }
+}
@@ -0,0 +1,170 @@
+import java.awt.*;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * What the engine knows about one filter: its name, kind and parameters, and how to build it for given values.
+ */
+final class FilterDescriptor {
+
+    final String name;
+    final String label;
+    final FilterKind kind;
+    final List<FilterParameter> parameters;
+    /**
+     * Whether this geometric filter changes the shape of the area, so its output replaces the whole image.
+     */
+    final boolean reshapes;
+    final RasterFormat minimumOutput;
+    final RasterFormat maximumOutput;
+
+    private final Function<int[], ImageFilterProcessor.PixelTransformer> point;
+    private final Function<int[], BiFunction<PackedRaster, Rectangle, ImageFilterProcessor.PixelPositionTransformer>> kernel;
+    private final BiFunction<GeometricTransform, int[], GeometricTransform> view;
+    private final BiFunction<int[], Histogram, ImageFilterProcessor.PixelTransformer> adaptive;
+    private final ToIntFunction<int[]> radius;
+
+    private FilterDescriptor(String name, String label, FilterKind kind, FilterParameter[] parameters,
+                             Function<int[], ImageFilterProcessor.PixelTransformer> point,
+                             Function<int[], BiFunction<PackedRaster, Rectangle, ImageFilterProcessor.PixelPositionTransformer>> kernel,
+                             BiFunction<GeometricTransform, int[], GeometricTransform> view, boolean reshapes,
+                             BiFunction<int[], Histogram, ImageFilterProcessor.PixelTransformer> adaptive, ToIntFunction<int[]> radius,
+                             RasterFormat minimumOutput, RasterFormat maximumOutput) {
+        this.name = name;
+        this.label = label;
+        this.kind = kind;
+        this.parameters = Collections.unmodifiableList(Arrays.asList(parameters));
+        this.reshapes = reshapes;
+        this.point = point;
+        this.kernel = kernel;
+        this.view = view;
+        this.adaptive = adaptive;
+        this.radius = radius;
+        this.minimumOutput = minimumOutput;
+        this.maximumOutput = maximumOutput;
+    }
+
+    static FilterDescriptor point(String name, String label, FilterKind kind,
+                                  Function<int[], ImageFilterProcessor.PixelTransformer> point, FilterParameter... parameters) {
+        if (!kind.isPointwise()) {
+            throw new IllegalArgumentException(kind + " is not a point filter kind");
+        }
+        return new FilterDescriptor(name, label, kind, parameters, point, null, null, false, null, null,
+                RasterFormat.COLOR, RasterFormat.COLOR);
+    }
+
+    static FilterDescriptor neighborhood(String name, String label, ToIntFunction<int[]> radius,
+                                         Function<int[], BiFunction<PackedRaster, Rectangle, ImageFilterProcessor.PixelPositionTransformer>> kernel,
+                                         FilterParameter... parameters) {
+        return new FilterDescriptor(name, label, FilterKind.NEIGHBORHOOD, parameters, null, kernel, null, false, null, radius,
+                RasterFormat.COLOR, RasterFormat.COLOR);
+    }
+
+    /**
+     * Its kernel takes its position and the image size from the {@code OFFSET} and {@code IMAGE_WIDTH}/{@code IMAGE_HEIGHT}
+     * parameters and is given no source raster, so it can run on any part of the image, a band of rows at a time.
+     */
+    static FilterDescriptor positional(String name, String label,
+                                       Function<int[], BiFunction<PackedRaster, Rectangle, ImageFilterProcessor.PixelPositionTransformer>> kernel,
+                                       FilterParameter... parameters) {
+        return new FilterDescriptor(name, label, FilterKind.POSITIONAL, parameters, null, kernel, null, false, null, values -> 0,
+                RasterFormat.COLOR, RasterFormat.COLOR);
+    }
+
+    /**
+     * Like a positional kernel, a noise kernel works in whole-image coordinates and is given no source raster.
+     */
+    static FilterDescriptor stochastic(String name, String label,
+                                       Function<int[], BiFunction<PackedRaster, Rectangle, ImageFilterProcessor.PixelPositionTransformer>> kernel,
+                                       FilterParameter... parameters) {
+        return new FilterDescriptor(name, label, FilterKind.STOCHASTIC, parameters, null, kernel, null, false, null, values -> 0,
+                RasterFormat.COLOR, RasterFormat.COLOR);
+    }
+
+    static FilterDescriptor geometric(String name, String label, boolean reshapes,
+                                      BiFunction<GeometricTransform, int[], GeometricTransform> view, FilterParameter... parameters) {
+        return new FilterDescriptor(name, label, FilterKind.GEOMETRIC, parameters, null, null, view, reshapes, null, null,
+                RasterFormat.BINARY, RasterFormat.COLOR);
+    }
+
+    static FilterDescriptor adaptive(String name, String label,
+                                     BiFunction<int[], Histogram, ImageFilterProcessor.PixelTransformer> mapping, FilterParameter... parameters) {
+        return new FilterDescriptor(name, label, FilterKind.ADAPTIVE, parameters, null, null, null, false, mapping, null,
+                RasterFormat.COLOR, RasterFormat.COLOR);
+    }
+
+    /**
+     * Declares the range of this filter's output format; within it the filter keeps its input's format.
+     * Filters produce color unless they declare otherwise.
+     */
+    FilterDescriptor outputs(RasterFormat minimum, RasterFormat maximum) {
+        return new FilterDescriptor(name, label, kind, parameters.toArray(new FilterParameter[0]), point, kernel, view, reshapes,
+                adaptive, radius, minimum, maximum);
+    }
+
+    RasterFormat output(RasterFormat input) {
+        RasterFormat output = input.widen(minimumOutput);
+        return output.compareTo(maximumOutput) > 0 ? maximumOutput : output;
+    }
+
+    boolean runsInPlace() {
+        return kind.isPointwise();
+    }
+
+    int[] values(int[] arguments) {
+        if (arguments.length > parameters.size()) {
+            throw new IllegalArgumentException("Filter " + name + " expects at most " + parameters.size() + " arguments, got " + arguments.length);
+        }
+        int[] values = new int[parameters.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = parameters.get(i).check(name, i < arguments.length ? arguments[i] : parameters.get(i).defaultValue);
+        }
+        return values;
+    }
+
+    ImageFilterProcessor.PixelTransformer pointOperation(int[] values) {
+        return point == null ? null : point.apply(values);
+    }
+
+    BiFunction<PackedRaster, Rectangle, ImageFilterProcessor.PixelPositionTransformer> kernel(int[] values) {
+        return kernel == null ? null : kernel.apply(values);
+    }
+
+    ImageFilterProcessor.PixelTransformer adaptiveOperation(int[] values, Histogram histogram) {
+        return adaptive == null ? null : adaptive.apply(values, histogram);
+    }
+
+    GeometricTransform view(GeometricTransform area, int[] values) {
+        if (view == null) {
+            throw new IllegalStateException(name + " is not a geometric filter");
+        }
+        return view.apply(area, values);
+    }
+
+    /**
+     * -1 when an output pixel depends on the whole image.
+     */
+    int halo(int[] values) {
+        if (radius != null) {
+            return radius.applyAsInt(values);
+        }
+        return kind.isPointwise() ? 0 : -1;
+    }
+
+    String describe() {
+        StringBuilder description = new StringBuilder(name).append(" [").append(kind.name().toLowerCase().replace('_', '-')).append(']');
+        for (FilterParameter parameter : parameters) {
+            description.append(' ').append(parameter);
+        }
+        return description.toString();
+    }
+
+    @Override
+    public String toString() {
+        return label;
+    }
+}
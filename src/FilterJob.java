@@ -0,0 +1,74 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.CancellationException;
+import java.util.function.Supplier;
+
+/**
+ * Cancellation and progress of one filter run. Bands {@link TileExecutor} schedules from the thread running the job
+ * check for cancellation, and finished bands are reported to the listener.
+ */
+final class FilterJob {
+
+    private static final ThreadLocal<FilterJob> CURRENT = new ThreadLocal<>();
+
+    private final Listener listener;
+    private volatile boolean cancelled;
+
+    FilterJob(Listener listener) {
+        this.listener = listener;
+    }
+
+    static FilterJob current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * @throws CancellationException if the job is cancelled before the work completes
+     */
+    <T> T run(Supplier<T> work) {
+        FilterJob previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            checkCancelled();
+            T result = work.get();
+            checkCancelled();
+            return result;
+        } finally {
+            CURRENT.set(previous);
+        }
+    }
+
+    /**
+     * Bands already running finish first.
+     */
+    void cancel() {
+        cancelled = true;
+    }
+
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    void checkCancelled() {
+        if (cancelled) {
+            throw new CancellationException("Filter cancelled");
+        }
+    }
+
+    /**
+     * {@code partial} is {@code null} when the output's pixels are only packed in at the end.
+     */
+    void bandCompleted(BufferedImage partial, Rectangle band, double progress) {
+        if (listener != null && !cancelled) {
+            listener.bandCompleted(partial, band, progress);
+        }
+    }
+
+    /**
+     * Called on whichever worker thread completed the band.
+     */
+    @FunctionalInterface
+    interface Listener {
+        void bandCompleted(BufferedImage partial, Rectangle band, double progress);
+    }
+}
@@ -0,0 +1,26 @@
+enum FilterKind {
+
+    POINT,
+    /**
+     * Compiles to a {@link ChannelLut}, so neighboring channel filters fuse into one lookup.
+     */
+    CHANNEL_SEPARABLE,
+    NEIGHBORHOOD,
+    /**
+     * A point filter that also depends on the pixel's position in the whole image.
+     */
+    POSITIONAL,
+    GEOMETRIC,
+    /**
+     * Seeded, so a seed and an origin always give the same result.
+     */
+    STOCHASTIC,
+    /**
+     * A point filter derived from the {@link Histogram} of the whole area, which it reads before writing any pixel.
+     */
+    ADAPTIVE;
+
+    boolean isPointwise() {
+        return this == POINT || this == CHANNEL_SEPARABLE;
+    }
+}
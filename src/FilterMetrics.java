@@ -0,0 +1,196 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+final class FilterMetrics {
+
+    static final String MBEAN_NAME = "PhotoMaster:type=FilterStatistics";
+
+    private static final FilterStatistics STATISTICS = new FilterStatistics();
+    private static final List<MetricsSink> SINKS = new CopyOnWriteArrayList<>(List.of(STATISTICS));
+    private static final com.sun.management.ThreadMXBean THREADS = allocationCounter();
+    /**
+     * On a pool worker, the count of the thread it works for.
+     */
+    private static final ThreadLocal<LongAdder> HELPER_BYTES = ThreadLocal.withInitial(LongAdder::new);
+
+    private FilterMetrics() {
+    }
+
+    static FilterStatistics statistics() {
+        return STATISTICS;
+    }
+
+    static void addSink(MetricsSink sink) {
+        SINKS.add(sink);
+    }
+
+    static void removeSink(MetricsSink sink) {
+        SINKS.remove(sink);
+    }
+
+    static void registerMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(STATISTICS, new ObjectName(MBEAN_NAME));
+        } catch (InstanceAlreadyExistsException ignored) {
+        } catch (JMException e) {
+            throw new IllegalStateException("Could not register " + MBEAN_NAME, e);
+        }
+    }
+
+    static Timer startFilter(String filter, BufferedImage image, Region region) {
+        int width = image.getWidth(), height = image.getHeight();
+        Rectangle area = region == null ? new Rectangle(width, height) : region.clip(width, height);
+        FilterEvent event = new FilterEvent();
+        event.filter = filter;
+        event.width = width;
+        event.height = height;
+        event.regionPixels = (long) area.width * area.height;
+        return new Timer(event, (sink, nanos, allocated) -> sink.filterCompleted(filter, width, height, event.regionPixels, nanos, allocated));
+    }
+
+    static Timer startStage(String stage, long pixels) {
+        StageEvent event = new StageEvent();
+        event.stage = stage;
+        event.pixels = pixels;
+        return new Timer(event, (sink, nanos, allocated) -> sink.stageCompleted(stage, pixels, nanos, allocated));
+    }
+
+    /**
+     * The thread that handed out the work passes {@code helperBytes} to {@link #addHelperBytes(long)} once all of it is done.
+     */
+    static void runAsHelper(LongAdder helperBytes, Runnable work) {
+        if (THREADS == null) {
+            work.run();
+            return;
+        }
+        LongAdder previous = HELPER_BYTES.get();
+        HELPER_BYTES.set(helperBytes);
+        long start = THREADS.getCurrentThreadAllocatedBytes();
+        try {
+            work.run();
+        } finally {
+            helperBytes.add(THREADS.getCurrentThreadAllocatedBytes() - start);
+            HELPER_BYTES.set(previous);
+        }
+    }
+
+    static void addHelperBytes(long bytes) {
+        if (THREADS != null) {
+            HELPER_BYTES.get().add(bytes);
+        }
+    }
+
+    /**
+     * 0 when the JVM cannot tell.
+     */
+    private static long allocatedBytes() {
+        if (THREADS == null) {
+            return 0;
+        }
+        return THREADS.getCurrentThreadAllocatedBytes() + HELPER_BYTES.get().sum();
+    }
+
+    private static com.sun.management.ThreadMXBean allocationCounter() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean counter = (com.sun.management.ThreadMXBean) threads;
+            if (counter.isThreadAllocatedMemorySupported()) {
+                counter.setThreadAllocatedMemoryEnabled(true);
+                return counter;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Work that fails is left unreported.
+     */
+    static final class Timer {
+
+        private final MeasuredEvent event;
+        private final Report report;
+        private final long startNanos;
+        private final long startAllocated;
+
+        private Timer(MeasuredEvent event, Report report) {
+            this.event = event;
+            this.report = report;
+            this.startAllocated = allocatedBytes();
+            event.begin();
+            this.startNanos = System.nanoTime();
+        }
+
+        void stop() {
+            long nanos = System.nanoTime() - startNanos;
+            event.end();
+            long allocated = allocatedBytes() - startAllocated;
+            if (event.shouldCommit()) {
+                event.allocatedBytes = allocated;
+                event.commit();
+            }
+            for (MetricsSink sink : SINKS) {
+                report.to(sink, nanos, allocated);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface Report {
+        void to(MetricsSink sink, long nanos, long allocatedBytes);
+    }
+
+    private abstract static class MeasuredEvent extends Event {
+
+        @Label("Allocated")
+        @Description("Bytes allocated by the measuring thread and the pool workers doing its work while it ran")
+        @DataAmount
+        long allocatedBytes;
+    }
+
+    @Name("photomaster.FilterRun")
+    @Label("Filter Run")
+    @Category("PhotoMaster")
+    @Description("One filter applied to an image or to a region of it")
+    private static final class FilterEvent extends MeasuredEvent {
+
+        @Label("Filter")
+        String filter;
+
+        @Label("Width")
+        int width;
+
+        @Label("Height")
+        int height;
+
+        @Label("Region Pixels")
+        long regionPixels;
+    }
+
+    @Name("photomaster.PipelineStage")
+    @Label("Pipeline Stage")
+    @Category("PhotoMaster")
+    @Description("One stage of loading, filtering or saving an image")
+    private static final class StageEvent extends MeasuredEvent {
+
+        @Label("Stage")
+        String stage;
+
+        @Label("Pixels")
+        long pixels;
+    }
+}
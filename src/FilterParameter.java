@@ -0,0 +1,124 @@
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+final class FilterParameter {
+
+    enum Type {
+
+        LEVEL,
+        /**
+         * Scaled with the image when an edit is replayed at another resolution; in pixels or tenths of one.
+         */
+        PIXELS,
+        OFFSET_X,
+        OFFSET_Y,
+        /**
+         * 0 for the image the filter runs on; filled in when it runs on a part of the image.
+         */
+        IMAGE_WIDTH,
+        IMAGE_HEIGHT,
+        NUMBER,
+        CHOICE;
+
+        boolean isSpatial() {
+            return this == PIXELS || this == OFFSET_X || this == OFFSET_Y || this == IMAGE_WIDTH || this == IMAGE_HEIGHT;
+        }
+    }
+
+    final String name;
+    final Type type;
+    final int defaultValue;
+    final int min;
+    final int max;
+    final List<String> options;
+
+    private FilterParameter(String name, Type type, int defaultValue, int min, int max, String... options) {
+        this.name = name;
+        this.type = type;
+        this.defaultValue = defaultValue;
+        this.min = min;
+        this.max = max;
+        this.options = Collections.unmodifiableList(Arrays.asList(options));
+    }
+
+    static FilterParameter level(String name, int defaultValue) {
+        return new FilterParameter(name, Type.LEVEL, defaultValue, 0, 255);
+    }
+
+    static FilterParameter pixels(String name, int defaultValue, int min) {
+        return new FilterParameter(name, Type.PIXELS, defaultValue, min, Integer.MAX_VALUE);
+    }
+
+    static FilterParameter pixelTenths(String name, int defaultValue, int min) {
+        return new FilterParameter(name, Type.PIXELS, defaultValue, min, Integer.MAX_VALUE);
+    }
+
+    static FilterParameter offset(String name, Type type) {
+        return new FilterParameter(name, type, 0, Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    static FilterParameter imageSize(String name, Type type) {
+        return new FilterParameter(name, type, 0, 0, Integer.MAX_VALUE);
+    }
+
+    static FilterParameter number(String name, int defaultValue) {
+        return number(name, defaultValue, Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    static FilterParameter number(String name, int defaultValue, int min, int max) {
+        return new FilterParameter(name, Type.NUMBER, defaultValue, min, max);
+    }
+
+    static FilterParameter choice(String name, String... options) {
+        return new FilterParameter(name, Type.CHOICE, 0, 0, options.length - 1, options);
+    }
+
+    int parse(String filter, String text) {
+        String value = text.trim();
+        int option = options.indexOf(value.toLowerCase());
+        if (option >= 0) {
+            return option;
+        }
+        try {
+            return check(filter, Integer.parseInt(value));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid argument '" + text + "' for filter " + filter
+                    + (options.isEmpty() ? "" : ", expected one of " + String.join(", ", options)));
+        }
+    }
+
+    int check(String filter, int value) {
+        if (value < min || value > max) {
+            throw new IllegalArgumentException("Parameter " + name + " of filter " + filter + " must be "
+                    + (max == Integer.MAX_VALUE ? "at least " + min : "between " + min + " and " + max) + ", got " + value);
+        }
+        return value;
+    }
+
+    /**
+     * Sizes stay at least 1 unless they are 0.
+     */
+    int scale(int value, double factor) {
+        switch (type) {
+            case PIXELS:
+            case IMAGE_WIDTH:
+            case IMAGE_HEIGHT:
+                return value == 0 ? 0 : Math.max(1, (int) Math.round(value * factor));
+            case OFFSET_X:
+            case OFFSET_Y:
+                return (int) Math.round(value * factor);
+            default:
+                return value;
+        }
+    }
+
+    @Override
+    public String toString() {
+        if (type == Type.CHOICE) {
+            return name + "=" + options.get(defaultValue) + " (" + String.join("|", options) + ")";
+        }
+        return name + "=" + defaultValue + " (" + type.name().toLowerCase().replace('_', '-') + (min == Integer.MIN_VALUE ? "" : ", min " + min)
+                + (max == Integer.MAX_VALUE ? "" : ", max " + max) + ")";
+    }
+}
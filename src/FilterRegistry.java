@@ -0,0 +1,156 @@
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+final class FilterRegistry {
+
+    private static final Map<String, FilterDescriptor> FILTERS = new LinkedHashMap<>();
+
+    static {
+        register(FilterDescriptor.stochastic("add-noise", "Add Noise Filter",
+                values -> (source, area) -> noise(values), noiseParameters()));
+        register(FilterDescriptor.adaptive("auto-contrast", "Auto Contrast Filter",
+                (values, histogram) -> ImageFilterProcessor.autoContrast(histogram, values[0] / 1000.0), clipParameter())
+                .outputs(RasterFormat.GRAY, RasterFormat.COLOR));
+        register(FilterDescriptor.adaptive("auto-levels", "Auto Levels Filter",
+                (values, histogram) -> ImageFilterProcessor.autoLevels(histogram, values[0] / 1000.0), clipParameter())
+                .outputs(RasterFormat.GRAY, RasterFormat.COLOR));
+        register(FilterDescriptor.adaptive("auto-threshold", "Auto Threshold Filter",
+                (values, histogram) -> ImageFilterProcessor.autoThreshold(histogram))
+                .outputs(RasterFormat.BINARY, RasterFormat.BINARY));
+        register(FilterDescriptor.neighborhood("blur", "Blur Filter", values -> values[0],
+                values -> (source, area) -> ImageFilterProcessor.blur(source, area, values[0], EdgeMode.CROP),
+                FilterParameter.pixels("radius", 1, 0))
+                .outputs(RasterFormat.GRAY, RasterFormat.COLOR));
+        register(FilterDescriptor.point("color-shift-left", "Color Shift Left Filter", FilterKind.CHANNEL_SEPARABLE,
+                values -> ImageFilterProcessor.colorShiftLeft())
+                .outputs(RasterFormat.BINARY, RasterFormat.COLOR));
+        register(FilterDescriptor.point("color-shift-right", "Color Shift Right Filter", FilterKind.CHANNEL_SEPARABLE,
+                values -> ImageFilterProcessor.colorShiftRight())
+                .outputs(RasterFormat.BINARY, RasterFormat.COLOR));
+        register(FilterDescriptor.point("contrast", "Contrast Filter", FilterKind.CHANNEL_SEPARABLE,
+                values -> ImageFilterProcessor.contrast())
+                .outputs(RasterFormat.GRAY, RasterFormat.COLOR));
+        register(FilterDescriptor.geometric("crop", "Crop Filter", true, FilterRegistry::crop,
+                FilterParameter.offset("x", FilterParameter.Type.OFFSET_X),
+                FilterParameter.offset("y", FilterParameter.Type.OFFSET_Y),
+                FilterParameter.pixels("width", 0, 0),
+                FilterParameter.pixels("height", 0, 0)));
+        register(FilterDescriptor.point("darker", "Darker Filter", FilterKind.CHANNEL_SEPARABLE,
+                values -> ImageFilterProcessor.darker())
+                .outputs(RasterFormat.GRAY, RasterFormat.COLOR));
+        register(FilterDescriptor.point("eliminate-blue", "Eliminate Blue Filter", FilterKind.CHANNEL_SEPARABLE,
+                values -> ImageFilterProcessor.eliminateBlue()));
+        register(FilterDescriptor.point("eliminate-green", "Eliminate Green Filter", FilterKind.CHANNEL_SEPARABLE,
+                values -> ImageFilterProcessor.eliminateGreen()));
+        register(FilterDescriptor.point("eliminate-red", "Eliminate Red Filter", FilterKind.CHANNEL_SEPARABLE,
+                values -> ImageFilterProcessor.eliminateRed()));
+        register(FilterDescriptor.geometric("flip", "Flip Filter", false, (view, values) -> view.flip()));
+        register(FilterDescriptor.neighborhood("gaussian-blur", "Gaussian Blur Filter",
+                values -> Arrays.stream(BlurEngine.gaussianBoxRadii(values[0] / 10.0)).sum(),
+                values -> (source, area) -> ImageFilterProcessor.gaussianBlur(source, area, values[0] / 10.0, EdgeMode.CROP),
+                FilterParameter.pixelTenths("sigma-tenths", 20, 1))
+                .outputs(RasterFormat.GRAY, RasterFormat.COLOR));
+        register(FilterDescriptor.point("grayscale", "Grayscale Filter", FilterKind.POINT,
+                values -> ImageFilterProcessor.grayscale())
+                .outputs(RasterFormat.BINARY, RasterFormat.GRAY));
+        register(FilterDescriptor.point("lighter", "Lighter Filter", FilterKind.CHANNEL_SEPARABLE,
+                values -> ImageFilterProcessor.lighter())
+                .outputs(RasterFormat.GRAY, RasterFormat.COLOR));
+        register(FilterDescriptor.geometric("mirror", "Mirror Filter", false, (view, values) -> view.mirror()));
+        register(FilterDescriptor.point("negative", "Negative Filter", FilterKind.CHANNEL_SEPARABLE,
+                values -> ImageFilterProcessor.negative())
+                .outputs(RasterFormat.BINARY, RasterFormat.COLOR));
+        register(FilterDescriptor.neighborhood("pixelate", "Pixelate Filter", values -> values[0] - 1,
+                values -> (source, area) -> ImageFilterProcessor.pixelate(source, area, values[0], values[1], values[2]),
+                FilterParameter.pixels("size", 10, 1),
+                FilterParameter.offset("offset-x", FilterParameter.Type.OFFSET_X),
+                FilterParameter.offset("offset-y", FilterParameter.Type.OFFSET_Y))
+                .outputs(RasterFormat.GRAY, RasterFormat.COLOR));
+        register(FilterDescriptor.point("posterize", "Posterize Filter", FilterKind.CHANNEL_SEPARABLE,
+                values -> ImageFilterProcessor.posterize())
+                .outputs(RasterFormat.GRAY, RasterFormat.COLOR));
+        register(FilterDescriptor.geometric("rotate-180", "Rotate 180 Filter", false, (view, values) -> view.rotate(180)));
+        register(FilterDescriptor.geometric("rotate-270", "Rotate 270 Filter", true, (view, values) -> view.rotate(270)));
+        register(FilterDescriptor.geometric("rotate-90", "Rotate 90 Filter", true, (view, values) -> view.rotate(90)));
+        register(FilterDescriptor.point("sepia", "Sepia Filter", FilterKind.POINT,
+                values -> ImageFilterProcessor.sepia()));
+        register(FilterDescriptor.neighborhood("show-borders", "Show Borders Filter", values -> 1,
+                values -> (source, area) -> ImageFilterProcessor.showBorders(source))
+                .outputs(RasterFormat.GRAY, RasterFormat.COLOR));
+        register(FilterDescriptor.point("solarize", "Solarize Filter", FilterKind.CHANNEL_SEPARABLE,
+                values -> ImageFilterProcessor.solarize())
+                .outputs(RasterFormat.GRAY, RasterFormat.COLOR));
+        register(FilterDescriptor.point("threshold", "Threshold Filter", FilterKind.POINT,
+                values -> ImageFilterProcessor.threshold())
+                .outputs(RasterFormat.BINARY, RasterFormat.BINARY));
+        register(FilterDescriptor.point("tint", "Tint Filter", FilterKind.CHANNEL_SEPARABLE,
+                values -> ImageFilterProcessor.tint(new Color(values[0], values[1], values[2])),
+                FilterParameter.level("red", 255), FilterParameter.level("green", 200), FilterParameter.level("blue", 200)));
+        register(FilterDescriptor.stochastic("vintage", "Vintage Filter",
+                values -> (source, area) -> ImageFilterProcessor.vintage(noise(values)), noiseParameters()));
+        register(FilterDescriptor.positional("vignette", "Vignette Filter",
+                values -> (source, area) -> ImageFilterProcessor.vignette(values[0], values[1], values[2], values[3]),
+                FilterParameter.imageSize("width", FilterParameter.Type.IMAGE_WIDTH),
+                FilterParameter.imageSize("height", FilterParameter.Type.IMAGE_HEIGHT),
+                FilterParameter.offset("offset-x", FilterParameter.Type.OFFSET_X),
+                FilterParameter.offset("offset-y", FilterParameter.Type.OFFSET_Y))
+                .outputs(RasterFormat.GRAY, RasterFormat.COLOR));
+    }
+
+    private FilterRegistry() {
+    }
+
+    private static FilterParameter[] noiseParameters() {
+        return new FilterParameter[] {
+                FilterParameter.level("strength", 25),
+                FilterParameter.choice("distribution", "uniform", "gaussian"),
+                FilterParameter.choice("channels", "mono", "color"),
+                FilterParameter.number("seed", 0),
+                FilterParameter.offset("offset-x", FilterParameter.Type.OFFSET_X),
+                FilterParameter.offset("offset-y", FilterParameter.Type.OFFSET_Y)
+        };
+    }
+
+    /**
+     * In tenths of a percent at each end.
+     */
+    private static FilterParameter clipParameter() {
+        return FilterParameter.number("clip-permille", 5, 0, 499);
+    }
+
+    private static NoiseGenerator noise(int[] values) {
+        return new NoiseGenerator(values[3], values[0], NoiseGenerator.Distribution.values()[values[1]], values[2] == 0, values[4], values[5]);
+    }
+
+    /**
+     * A width or height of 0 reaches the edge.
+     */
+    private static GeometricTransform crop(GeometricTransform view, int[] values) {
+        Rectangle area = new Rectangle(values[0], values[1],
+                values[2] == 0 ? view.width - values[0] : values[2], values[3] == 0 ? view.height - values[1] : values[3]);
+        return view.crop(area.intersection(new Rectangle(view.width, view.height)));
+    }
+
+    private static void register(FilterDescriptor filter) {
+        if (FILTERS.putIfAbsent(filter.name, filter) != null) {
+            throw new IllegalStateException("Filter registered twice: " + filter.name);
+        }
+    }
+
+    static FilterDescriptor get(String name) {
+        FilterDescriptor filter = FILTERS.get(name);
+        if (filter == null) {
+            throw new IllegalArgumentException("Invalid filter: " + name);
+        }
+        return filter;
+    }
+
+    static List<FilterDescriptor> all() {
+        return Collections.unmodifiableList(new ArrayList<>(FILTERS.values()));
+    }
+}
@@ -0,0 +1,162 @@
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Latencies are counted in power-of-two buckets of microseconds, so percentiles are exact to within a factor of two.
+ */
+final class FilterStatistics implements MetricsSink, FilterStatisticsMXBean {
+
+    private static final int BUCKETS = 40;
+
+    private final Map<String, Summary> filters = new ConcurrentHashMap<>();
+    private final Map<String, Summary> stages = new ConcurrentHashMap<>();
+
+    @Override
+    public void filterCompleted(String filter, int width, int height, long regionPixels, long nanos, long allocatedBytes) {
+        filters.computeIfAbsent(filter, name -> new Summary()).add(regionPixels, nanos, allocatedBytes);
+    }
+
+    @Override
+    public void stageCompleted(String stage, long pixels, long nanos, long allocatedBytes) {
+        stages.computeIfAbsent(stage, name -> new Summary()).add(pixels, nanos, allocatedBytes);
+    }
+
+    @Override
+    public Map<String, Long> getInvocations() {
+        return collect(filters, summary -> summary.count);
+    }
+
+    @Override
+    public Map<String, Double> getMeanMillis() {
+        return collect(filters, Summary::meanMillis);
+    }
+
+    @Override
+    public Map<String, Double> getP99Millis() {
+        return collect(filters, summary -> summary.percentileMillis(99));
+    }
+
+    @Override
+    public Map<String, Double> getMegapixelsPerSecond() {
+        return collect(filters, Summary::megapixelsPerSecond);
+    }
+
+    @Override
+    public Map<String, Long> getAllocatedBytes() {
+        return collect(filters, summary -> summary.allocatedBytes);
+    }
+
+    @Override
+    public Map<String, Double> getMeanRegionMegapixels() {
+        return collect(filters, Summary::meanRegionMegapixels);
+    }
+
+    @Override
+    public Map<String, Long> getStageInvocations() {
+        return collect(stages, summary -> summary.count);
+    }
+
+    @Override
+    public Map<String, Double> getStageMeanMillis() {
+        return collect(stages, Summary::meanMillis);
+    }
+
+    @Override
+    public double getPercentileMillis(String filter, double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 100: " + percentile);
+        }
+        Summary summary = filters.get(filter);
+        return summary == null ? 0 : summary.percentileMillis(percentile);
+    }
+
+    @Override
+    public void reset() {
+        filters.clear();
+        stages.clear();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder(String.format(Locale.ROOT, "%-28s %8s %10s %10s %10s %12s %12s%n",
+                "Filter / stage", "Runs", "Mean ms", "P99 ms", "MP/s", "Alloc MB", "Region MP"));
+        append(report, filters);
+        append(report, stages);
+        return report.toString();
+    }
+
+    private static void append(StringBuilder report, Map<String, Summary> summaries) {
+        collect(summaries, summary -> summary).entrySet().stream()
+                .sorted((a, b) -> Long.compare(b.getValue().nanos, a.getValue().nanos))
+                .forEach(entry -> {
+                    Summary summary = entry.getValue();
+                    report.append(String.format(Locale.ROOT, "%-28s %8d %10.2f %10.2f %10.1f %12.1f %12.2f%n",
+                            entry.getKey(), summary.count, summary.meanMillis(), summary.percentileMillis(99),
+                            summary.megapixelsPerSecond(), summary.allocatedBytes / 1e6, summary.meanRegionMegapixels()));
+                });
+    }
+
+    private static <T> Map<String, T> collect(Map<String, Summary> summaries, Function<Summary, T> value) {
+        Map<String, T> values = new TreeMap<>();
+        summaries.forEach((name, summary) -> values.put(name, value.apply(summary.snapshot())));
+        return values;
+    }
+
+    /**
+     * Updated under its own lock, read through consistent snapshots.
+     */
+    private static final class Summary {
+
+        long count;
+        long pixels;
+        long nanos;
+        long allocatedBytes;
+        final long[] latencies = new long[BUCKETS];
+
+        synchronized void add(long pixels, long nanos, long allocatedBytes) {
+            count++;
+            this.pixels += pixels;
+            this.nanos += nanos;
+            this.allocatedBytes += allocatedBytes;
+            long micros = Math.max(1, nanos / 1000);
+            latencies[Math.min(BUCKETS - 1, 63 - Long.numberOfLeadingZeros(micros))]++;
+        }
+
+        synchronized Summary snapshot() {
+            Summary copy = new Summary();
+            copy.count = count;
+            copy.pixels = pixels;
+            copy.nanos = nanos;
+            copy.allocatedBytes = allocatedBytes;
+            System.arraycopy(latencies, 0, copy.latencies, 0, BUCKETS);
+            return copy;
+        }
+
+        double meanMillis() {
+            return count == 0 ? 0 : nanos / 1e6 / count;
+        }
+
+        double meanRegionMegapixels() {
+            return count == 0 ? 0 : pixels / 1e6 / count;
+        }
+
+        double megapixelsPerSecond() {
+            return nanos == 0 ? 0 : pixels / 1e6 / (nanos / 1e9);
+        }
+
+        double percentileMillis(double percentile) {
+            long rank = (long) Math.ceil(percentile / 100 * count);
+            long seen = 0;
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                seen += latencies[bucket];
+                if (seen >= Math.max(1, rank)) {
+                    return (2L << bucket) / 1000.0;
+                }
+            }
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+import java.util.Map;
+
+/**
+ * Maps are keyed by filter or stage name; times are in milliseconds.
+ */
+public interface FilterStatisticsMXBean {
+
+    Map<String, Long> getInvocations();
+
+    Map<String, Double> getMeanMillis();
+
+    Map<String, Double> getP99Millis();
+
+    Map<String, Double> getMegapixelsPerSecond();
+
+    Map<String, Long> getAllocatedBytes();
+
+    Map<String, Double> getMeanRegionMegapixels();
+
+    Map<String, Long> getStageInvocations();
+
+    Map<String, Double> getStageMeanMillis();
+
+    double getPercentileMillis(String filter, double percentile);
+
+    void reset();
+}
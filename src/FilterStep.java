@@ -0,0 +1,255 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BiFunction;
+
+final class FilterStep {
+
+    private final String name;
+    private final FilterDescriptor filter;
+    private final int[] arguments;
+    private final Operation operation;
+    private final ImageFilterProcessor.PixelTransformer pointOperation;
+
+    private FilterStep(String name, FilterDescriptor filter, int[] arguments, Operation operation,
+                       ImageFilterProcessor.PixelTransformer pointOperation) {
+        this.name = name;
+        this.filter = filter;
+        this.arguments = arguments;
+        this.operation = operation;
+        this.pointOperation = pointOperation;
+    }
+
+    /**
+     * Parses a step such as {@code "pixelate:8"}, {@code "add-noise:40:gaussian"} or {@code "cube:looks/film.cube"}.
+     */
+    static FilterStep parse(String spec) {
+        if (spec.trim().startsWith("cube:")) {
+            return cube(Paths.get(spec.trim().substring("cube:".length())));
+        }
+        String[] parts = spec.trim().split(":");
+        String name = parts[0].toLowerCase();
+        List<FilterParameter> parameters = FilterRegistry.get(name).parameters;
+        int[] arguments = new int[parts.length - 1];
+        for (int i = 1; i < parts.length; i++) {
+            if (i > parameters.size()) {
+                throw new IllegalArgumentException("Filter " + name + " expects at most " + parameters.size() + " arguments, got " + arguments.length);
+            }
+            arguments[i - 1] = parameters.get(i - 1).parse(name, parts[i]);
+        }
+        return of(name, arguments);
+    }
+
+    static FilterStep of(String name, int... arguments) {
+        FilterDescriptor filter = FilterRegistry.get(name);
+        int[] values = filter.values(arguments);
+        ImageFilterProcessor.PixelTransformer point = filter.pointOperation(values);
+        if (point != null) {
+            return new FilterStep(name, filter, values, (image, region) -> ImageFilterProcessor.applyPixelFilter(image, region,
+                    point, output(filter, RasterFormat.of(image), region)), point);
+        }
+        if (filter.kind == FilterKind.GEOMETRIC) {
+            return new FilterStep(name, filter, values, (image, region) -> {
+                if (region == null || filter.reshapes) {
+                    return view(filter, values, image.getWidth(), image.getHeight(), region).apply(image);
+                }
+                return region.clip(image.getWidth(), image.getHeight()).isEmpty()
+                        ? PackedRaster.of(image).copy().toImage()
+                        : view(filter, values, image.getWidth(), image.getHeight(), region).applyWithin(image, region);
+            }, null);
+        }
+        if (filter.kind == FilterKind.ADAPTIVE) {
+            return new FilterStep(name, filter, values, (image, region) -> {
+                PackedRaster source = PackedRaster.of(image);
+                Rectangle area = region == null ? new Rectangle(source.width, source.height) : region.clip(source.width, source.height);
+                return area.isEmpty() ? source.copy().toImage()
+                        : ImageFilterProcessor.applyPixelFilter(source, region, filter.adaptiveOperation(values, Histogram.of(source, area)),
+                        output(filter, RasterFormat.of(image), region));
+            }, null);
+        }
+        if (filter.kind != FilterKind.NEIGHBORHOOD) {
+            return new FilterStep(name, filter, values, (image, region) -> {
+                int width = image.getWidth(), height = image.getHeight();
+                Rectangle area = region == null ? new Rectangle(width, height) : region.clip(width, height);
+                return area.isEmpty() ? PackedRaster.of(image).copy().toImage()
+                        : ImageFilterProcessor.applyPositionFilter(image, region, filter.kernel(sized(filter, values, width, height)).apply(null, area),
+                        output(filter, RasterFormat.of(image), region));
+            }, null);
+        }
+        BiFunction<PackedRaster, Rectangle, ImageFilterProcessor.PixelPositionTransformer> kernel = filter.kernel(values);
+        return new FilterStep(name, filter, values, (image, region) -> {
+            PackedRaster source = PackedRaster.of(image);
+            Rectangle area = region == null ? new Rectangle(source.width, source.height) : region.clip(source.width, source.height);
+            return area.isEmpty() ? source.copy().toImage()
+                    : ImageFilterProcessor.applyPositionFilter(source, region, kernel.apply(source, area), output(filter, RasterFormat.of(image), region));
+        }, null);
+    }
+
+    private static int[] sized(FilterDescriptor filter, int[] values, int width, int height) {
+        int[] sized = values.clone();
+        for (int i = 0; i < sized.length; i++) {
+            FilterParameter.Type type = filter.parameters.get(i).type;
+            if ((type == FilterParameter.Type.IMAGE_WIDTH || type == FilterParameter.Type.IMAGE_HEIGHT) && sized[i] == 0) {
+                sized[i] = type == FilterParameter.Type.IMAGE_WIDTH ? width : height;
+            }
+        }
+        return sized;
+    }
+
+    /**
+     * Inside a region the output must also hold the pixels left as they are.
+     */
+    private static RasterFormat output(FilterDescriptor filter, RasterFormat input, Region region) {
+        if (filter == null) {
+            return RasterFormat.COLOR;
+        }
+        return region == null ? filter.output(input) : input.widen(filter.output(input));
+    }
+
+    private static GeometricTransform view(FilterDescriptor filter, int[] values, int width, int height, Region region) {
+        GeometricTransform area = GeometricTransform.of(width, height);
+        return filter.view(region == null ? area : area.crop(region.clip(width, height)), values);
+    }
+
+    /**
+     * Returns this adaptive step as the point step it is on an area with {@code histogram}, e.g. to run it tile by tile.
+     */
+    FilterStep withHistogram(Histogram histogram) {
+        if (getKind() != FilterKind.ADAPTIVE || pointOperation != null) {
+            return this;
+        }
+        ImageFilterProcessor.PixelTransformer point = filter.adaptiveOperation(arguments, histogram);
+        return new FilterStep(name, filter, arguments, (image, region) -> ImageFilterProcessor.applyPixelFilter(image, region,
+                point, output(filter, RasterFormat.of(image), region)), point);
+    }
+
+    static FilterStep cube(Path file) {
+        try {
+            ColorCube cube = ColorCube.load(file);
+            return new FilterStep("cube:" + file, null, new int[0], (image, region) -> ImageFilterProcessor.applyPixelFilter(image, region, cube), cube);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Cannot read LUT " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    String getName() {
+        return name;
+    }
+
+    int[] getArguments() {
+        return arguments.clone();
+    }
+
+    FilterKind getKind() {
+        return filter == null ? FilterKind.POINT : filter.kind;
+    }
+
+    RasterFormat output(RasterFormat input, Region region) {
+        return output(filter, input, region);
+    }
+
+    boolean runsInPlace() {
+        return filter == null || filter.runsInPlace();
+    }
+
+    boolean reshapes() {
+        return filter != null && filter.reshapes;
+    }
+
+    /**
+     * Returns {@code null} if this step is not geometric.
+     */
+    GeometricTransform view(int width, int height, Region region) {
+        return getKind() == FilterKind.GEOMETRIC ? view(filter, arguments, width, height, region) : null;
+    }
+
+    ImageFilterProcessor.PixelTransformer getPointOperation() {
+        return pointOperation;
+    }
+
+    BufferedImage apply(BufferedImage image) {
+        return apply(image, null);
+    }
+
+    BufferedImage apply(BufferedImage image, Region region) {
+        FilterMetrics.Timer timer = FilterMetrics.startFilter(name, image, region);
+        BufferedImage result = operation.apply(image, region);
+        timer.stop();
+        return result;
+    }
+
+    FilterStep with(String parameter, int value) {
+        for (int i = 0; filter != null && i < filter.parameters.size(); i++) {
+            if (filter.parameters.get(i).name.equals(parameter)) {
+                int[] values = arguments.clone();
+                values[i] = value;
+                return of(name, values);
+            }
+        }
+        throw new IllegalArgumentException("Filter " + name + " has no parameter " + parameter);
+    }
+
+    /**
+     * Scales the step's sizes in pixels, to replay an edit made on a preview at another resolution.
+     */
+    FilterStep scaled(double factor) {
+        if (filter == null || factor == 1 || filter.parameters.stream().noneMatch(parameter -> parameter.type.isSpatial())) {
+            return this;
+        }
+        int[] values = arguments.clone();
+        for (int i = 0; i < values.length; i++) {
+            values[i] = filter.parameters.get(i).scale(values[i], factor);
+        }
+        return of(name, values);
+    }
+
+    int halo() {
+        return filter == null || pointOperation != null ? 0 : filter.halo(arguments);
+    }
+
+    /**
+     * Returns the step to run on the part at {@code (x, y)} of a {@code width} x {@code height} image, keeping
+     * position-dependent patterns such as pixelate blocks and the vignette aligned to the whole image.
+     */
+    FilterStep at(int x, int y, int width, int height) {
+        if (filter == null) {
+            return this;
+        }
+        int[] values = arguments.clone();
+        boolean moved = false;
+        for (int i = 0; i < values.length; i++) {
+            FilterParameter.Type type = filter.parameters.get(i).type;
+            if ((type == FilterParameter.Type.OFFSET_X && x != 0) || (type == FilterParameter.Type.OFFSET_Y && y != 0)) {
+                values[i] -= type == FilterParameter.Type.OFFSET_X ? x : y;
+                moved = true;
+            } else if ((type == FilterParameter.Type.IMAGE_WIDTH || type == FilterParameter.Type.IMAGE_HEIGHT) && values[i] == 0) {
+                values[i] = type == FilterParameter.Type.IMAGE_WIDTH ? width : height;
+                moved = true;
+            }
+        }
+        return moved ? of(name, values) : this;
+    }
+
+    @FunctionalInterface
+    private interface Operation {
+        BufferedImage apply(BufferedImage image, Region region);
+    }
+
+    /**
+     * Noise is seeded, so every step is repeatable; cube steps are keyed by their table contents.
+     */
+    String cacheKey() {
+        return pointOperation instanceof ColorCube ? this + "#" + ((ColorCube) pointOperation).digest() : toString();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(name);
+        Arrays.stream(arguments).forEach(argument -> builder.append(':').append(argument));
+        return builder.toString();
+    }
+}
@@ -0,0 +1,187 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+/**
+ * A lazy view of an image under flips, quarter turns and crops. It only records which source pixel each output
+ * pixel shows, so chains of transforms compose into one view and only {@link #apply(BufferedImage)} touches pixels.
+ */
+final class GeometricTransform {
+
+    private static final int BLOCK = 128;
+
+    final int width;
+    final int height;
+
+    private final int sourceWidth;
+    private final int sourceHeight;
+    private final int xx, xy, x0;
+    private final int yx, yy, y0;
+
+    private GeometricTransform(int sourceWidth, int sourceHeight, int width, int height,
+                               int xx, int xy, int x0, int yx, int yy, int y0) {
+        this.sourceWidth = sourceWidth;
+        this.sourceHeight = sourceHeight;
+        this.width = width;
+        this.height = height;
+        this.xx = xx;
+        this.xy = xy;
+        this.x0 = x0;
+        this.yx = yx;
+        this.yy = yy;
+        this.y0 = y0;
+    }
+
+    static GeometricTransform of(int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Image size must be positive: " + width + "x" + height);
+        }
+        return new GeometricTransform(width, height, width, height, 1, 0, 0, 0, 1, 0);
+    }
+
+    GeometricTransform mirror() {
+        return then(new GeometricTransform(width, height, width, height, -1, 0, width - 1, 0, 1, 0));
+    }
+
+    GeometricTransform flip() {
+        return then(new GeometricTransform(width, height, width, height, 1, 0, 0, 0, -1, height - 1));
+    }
+
+    /**
+     * {@code degrees} must be a multiple of 90; negative angles turn counterclockwise.
+     */
+    GeometricTransform rotate(int degrees) {
+        if (degrees % 90 != 0) {
+            throw new IllegalArgumentException("Rotation must be a multiple of 90 degrees: " + degrees);
+        }
+        switch (Math.floorMod(degrees, 360)) {
+            case 90:
+                return then(new GeometricTransform(width, height, height, width, 0, 1, 0, -1, 0, height - 1));
+            case 180:
+                return then(new GeometricTransform(width, height, width, height, -1, 0, width - 1, 0, -1, height - 1));
+            case 270:
+                return then(new GeometricTransform(width, height, height, width, 0, -1, width - 1, 1, 0, 0));
+            default:
+                return this;
+        }
+    }
+
+    GeometricTransform crop(Rectangle area) {
+        if (area.isEmpty() || !new Rectangle(width, height).contains(area)) {
+            throw new IllegalArgumentException("Crop area " + area.x + "," + area.y + " " + area.width + "x" + area.height
+                    + " is not inside the " + width + "x" + height + " image");
+        }
+        return then(new GeometricTransform(width, height, area.width, area.height, 1, 0, area.x, 0, 1, area.y));
+    }
+
+    GeometricTransform then(GeometricTransform next) {
+        if (next.sourceWidth != width || next.sourceHeight != height) {
+            throw new IllegalArgumentException("Transform of a " + next.sourceWidth + "x" + next.sourceHeight
+                    + " image cannot follow one producing " + width + "x" + height);
+        }
+        return new GeometricTransform(sourceWidth, sourceHeight, next.width, next.height,
+                xx * next.xx + xy * next.yx, xx * next.xy + xy * next.yy, xx * next.x0 + xy * next.y0 + x0,
+                yx * next.xx + yy * next.yx, yx * next.xy + yy * next.yy, yx * next.x0 + yy * next.y0 + y0);
+    }
+
+    boolean isIdentity() {
+        return width == sourceWidth && height == sourceHeight && xx == 1 && xy == 0 && x0 == 0 && yx == 0 && yy == 1 && y0 == 0;
+    }
+
+    Rectangle sourceBounds(Rectangle area) {
+        int right = area.x + area.width - 1, bottom = area.y + area.height - 1;
+        int x1 = xx * area.x + xy * area.y + x0, x2 = xx * right + xy * bottom + x0;
+        int y1 = yx * area.x + yy * area.y + y0, y2 = yx * right + yy * bottom + y0;
+        return new Rectangle(Math.min(x1, x2), Math.min(y1, y2), Math.abs(x2 - x1) + 1, Math.abs(y2 - y1) + 1);
+    }
+
+    /**
+     * Reads the part {@code area} of this view from {@code window}, the pixels of the source's {@code windowArea},
+     * which must cover the area's {@link #sourceBounds(Rectangle)}.
+     */
+    int[] read(int[] window, Rectangle windowArea, Rectangle area) {
+        int[] target = new int[area.width * area.height];
+        for (int v = 0; v < area.height; v++) {
+            for (int u = 0; u < area.width; u++) {
+                int x = xx * (area.x + u) + xy * (area.y + v) + x0 - windowArea.x;
+                int y = yx * (area.x + u) + yy * (area.y + v) + y0 - windowArea.y;
+                target[v * area.width + u] = window[y * windowArea.width + x];
+            }
+        }
+        return target;
+    }
+
+    BufferedImage apply(BufferedImage image) {
+        PackedRaster source = PackedRaster.of(checkSize(image));
+        PackedRaster target = source.createCompatible(width, height);
+        TileExecutor.forEachBand(width, height, (startY, endY) -> copy(source.pixels, target.pixels, startY, endY));
+        return target.toImage();
+    }
+
+    /**
+     * Writes this view over the region's bounds in a copy of {@code image}, inside the region only.
+     */
+    BufferedImage applyWithin(BufferedImage image, Region region) {
+        Rectangle bounds = region.clip(sourceWidth, sourceHeight);
+        if (bounds.width != width || bounds.height != height) {
+            throw new IllegalArgumentException("A " + width + "x" + height + " view cannot fill " + region);
+        }
+        PackedRaster source = PackedRaster.of(checkSize(image));
+        PackedRaster target = source.copy();
+        int[] view = new int[width * height];
+        TileExecutor.forEachBand(width, height, (startY, endY) -> copy(source.pixels, view, startY, endY));
+        boolean masked = !region.isRectangular();
+        for (int v = 0; v < height; v++) {
+            int row = (bounds.y + v) * source.width + bounds.x;
+            if (!masked) {
+                System.arraycopy(view, v * width, target.pixels, row, width);
+                continue;
+            }
+            for (int u = 0; u < width; u++) {
+                if (region.contains(bounds.x + u, bounds.y + v)) {
+                    target.pixels[row + u] = view[v * width + u];
+                }
+            }
+        }
+        return target.toImage();
+    }
+
+    private BufferedImage checkSize(BufferedImage image) {
+        if (image.getWidth() != sourceWidth || image.getHeight() != sourceHeight) {
+            throw new IllegalArgumentException("Transform of a " + sourceWidth + "x" + sourceHeight
+                    + " image applied to a " + image.getWidth() + "x" + image.getHeight() + " image");
+        }
+        return image;
+    }
+
+    private void copy(int[] source, int[] target, int startY, int endY) {
+        if (xy == 0) {
+            for (int v = startY; v < endY; v++) {
+                int from = (yy * v + y0) * sourceWidth + x0;
+                int to = v * width;
+                if (xx == 1) {
+                    System.arraycopy(source, from, target, to, width);
+                } else {
+                    for (int u = 0; u < width; u++) {
+                        target[to + u] = source[from - u];
+                    }
+                }
+            }
+            return;
+        }
+        // Each output row walks down a source column; blocks keep the source rows they touch in cache.
+        for (int blockY = startY; blockY < endY; blockY += BLOCK) {
+            int blockEndY = Math.min(endY, blockY + BLOCK);
+            for (int blockX = 0; blockX < width; blockX += BLOCK) {
+                int blockEndX = Math.min(width, blockX + BLOCK);
+                for (int v = blockY; v < blockEndY; v++) {
+                    int from = (yx * blockX + y0) * sourceWidth + xy * v + x0;
+                    int step = yx * sourceWidth;
+                    int to = v * width;
+                    for (int u = blockX; u < blockEndX; u++, from += step) {
+                        target[to + u] = source[from];
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,188 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Red, green, blue and luminance histograms of an area of an image.
+ * Bands of rows are counted into partial histograms merged at the end, so threads never share a counter.
+ */
+final class Histogram {
+
+    static final int LEVELS = 256;
+
+    private static final int RED = 0;
+    private static final int GREEN = LEVELS;
+    private static final int BLUE = 2 * LEVELS;
+    private static final int LUMINANCE = 3 * LEVELS;
+
+    /**
+     * Red, green, blue and luminance counts one after the other.
+     */
+    private final long[] counts;
+    private final long total;
+
+    private Histogram(long[] counts, long total) {
+        this.counts = counts;
+        this.total = total;
+    }
+
+    static Histogram of(BufferedImage image) {
+        PackedRaster raster = PackedRaster.of(image);
+        return of(raster, new Rectangle(raster.width, raster.height));
+    }
+
+    /**
+     * {@code area} must lie inside the raster.
+     */
+    static Histogram of(PackedRaster raster, Rectangle area) {
+        return of(raster.pixels, raster.width, area);
+    }
+
+    private static Histogram of(int[] pixels, int width, Rectangle area) {
+        long[] counts = new long[4 * LEVELS];
+        List<int[]> partials = new ArrayList<>();
+        TileExecutor.forEachBand(area.width, area.height, (startY, endY) -> {
+            int[] partial = new int[4 * LEVELS];
+            count(pixels, width, area.x, area.x + area.width, area.y + startY, area.y + endY, partial, 1);
+            synchronized (partials) {
+                partials.add(partial);
+            }
+        });
+        for (int[] partial : partials) {
+            add(counts, partial);
+        }
+        return new Histogram(counts, (long) area.width * area.height);
+    }
+
+    static Histogram of(TiledImageStore store, Rectangle area) throws IOException {
+        long[] counts = new long[4 * LEVELS];
+        for (int index = 0; index < store.tileCount(); index++) {
+            Rectangle part = store.tileBounds(index).intersection(area);
+            if (!part.isEmpty()) {
+                Histogram tile = of(store.read(part), part.width, new Rectangle(part.width, part.height));
+                for (int i = 0; i < counts.length; i++) {
+                    counts[i] += tile.counts[i];
+                }
+            }
+        }
+        return new Histogram(counts, (long) area.width * area.height);
+    }
+
+    /**
+     * The histogram of two disjoint areas.
+     */
+    Histogram plus(Histogram other) {
+        long[] counts = this.counts.clone();
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        return new Histogram(counts, total + other.total);
+    }
+
+    /**
+     * Recounts only {@code area}, the part an edit changed from {@code before} into {@code after}.
+     */
+    Histogram update(PackedRaster before, PackedRaster after, Rectangle area) {
+        if (before.width != after.width || before.height != after.height) {
+            throw new IllegalArgumentException("Cannot update a histogram across a change of size");
+        }
+        int[] delta = new int[4 * LEVELS];
+        for (int y = area.y; y < area.y + area.height; y++) {
+            count(before.pixels, before.width, area.x, area.x + area.width, y, y + 1, delta, -1);
+            count(after.pixels, after.width, area.x, area.x + area.width, y, y + 1, delta, 1);
+        }
+        long[] counts = this.counts.clone();
+        add(counts, delta);
+        return new Histogram(counts, total);
+    }
+
+    private static void count(int[] pixels, int width, int startX, int endX, int startY, int endY, int[] counts, int weight) {
+        for (int y = startY; y < endY; y++) {
+            int row = y * width;
+            for (int i = row + startX; i < row + endX; i++) {
+                int argb = pixels[i];
+                counts[RED + ((argb >> 16) & 0xFF)] += weight;
+                counts[GREEN + ((argb >> 8) & 0xFF)] += weight;
+                counts[BLUE + (argb & 0xFF)] += weight;
+                counts[LUMINANCE + ImageFilterProcessor.luma(argb)] += weight;
+            }
+        }
+    }
+
+    private static void add(long[] counts, int[] partial) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += partial[i];
+        }
+    }
+
+    long total() {
+        return total;
+    }
+
+    long red(int level) {
+        return counts[RED + level];
+    }
+
+    long green(int level) {
+        return counts[GREEN + level];
+    }
+
+    long blue(int level) {
+        return counts[BLUE + level];
+    }
+
+    long luminance(int level) {
+        return counts[LUMINANCE + level];
+    }
+
+    /**
+     * Per channel, the lowest and highest level once a fraction {@code clip} of the pixels is left out at either end.
+     */
+    int[] bounds(double clip) {
+        long skipped = (long) (total * clip);
+        int[] bounds = new int[8];
+        for (int channel = 0; channel < 4; channel++) {
+            int offset = channel * LEVELS;
+            int low = 0, high = LEVELS - 1;
+            for (long seen = counts[offset]; seen <= skipped && low < high; seen += counts[offset + low]) {
+                low++;
+            }
+            for (long seen = counts[offset + high]; seen <= skipped && high > low; seen += counts[offset + high]) {
+                high--;
+            }
+            bounds[2 * channel] = low;
+            bounds[2 * channel + 1] = high;
+        }
+        return bounds;
+    }
+
+    /**
+     * The luminance threshold by Otsu's method; pixels above it are the bright class.
+     */
+    int otsuThreshold() {
+        long sum = 0;
+        for (int level = 0; level < LEVELS; level++) {
+            sum += level * counts[LUMINANCE + level];
+        }
+        long darkCount = 0, darkSum = 0;
+        double bestVariance = -1;
+        int threshold = 0;
+        for (int level = 0; level < LEVELS; level++) {
+            darkCount += counts[LUMINANCE + level];
+            darkSum += level * counts[LUMINANCE + level];
+            long brightCount = total - darkCount;
+            if (darkCount == 0 || brightCount == 0) {
+                continue;
+            }
+            double difference = (double) darkSum / darkCount - (double) (sum - darkSum) / brightCount;
+            double variance = (double) darkCount * brightCount * difference * difference;
+            if (variance > bestVariance) {
+                bestVariance = variance;
+                threshold = level;
+            }
+        }
+        return threshold;
+    }
+}
@@ -1,82 +1,153 @@
 import java.awt.*;
 import java.awt.image.BufferedImage;
-import java.util.List;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntUnaryOperator;
 
 public class ImageFilterProcessor {
 
+    private static final int BAND_PIXELS = 64 * 1024;
+
     public static BufferedImage applyGrayscaleFilter(BufferedImage image) {
-        return applyFilter(image, (color) -> {
-            int colorAverage = (color.getRed() + color.getGreen() + color.getBlue()) / 3;
-            return new Color(colorAverage, colorAverage, colorAverage);
-        });
+        return applyPixelFilter(image, null, grayscale(), RasterFormat.GRAY);
+    }
+
+    static PixelTransformer grayscale() {
+        return PointKernels.grayscale(ImageFilterProcessor::grayscale);
+    }
+
+    static int grayscale(int argb) {
+        int colorAverage = (red(argb) + green(argb) + blue(argb)) / 3;
+        return rgb(colorAverage, colorAverage, colorAverage);
     }
 
     public static BufferedImage applyThresholdFilter(BufferedImage image) {
-        return applyFilter(image, (color) -> {
-            int grayValue = (color.getRed() + color.getGreen() + color.getBlue()) / 3;
-            return grayValue > 128 ? Color.WHITE : Color.BLACK;
-        });
+        return applyPixelFilter(image, null, threshold(), RasterFormat.BINARY);
+    }
+
+    static PixelTransformer threshold() {
+        return PointKernels.threshold(ImageFilterProcessor::threshold);
+    }
+
+    static int threshold(int argb) {
+        int grayValue = (red(argb) + green(argb) + blue(argb)) / 3;
+        return grayValue > 128 ? 0xFFFFFFFF : 0xFF000000;
+    }
+
+    static PixelTransformer autoThreshold(Histogram histogram) {
+        int level = histogram.otsuThreshold();
+        return argb -> luma(argb) > level ? 0xFFFFFFFF : 0xFF000000;
+    }
+
+    static ChannelLut autoLevels(Histogram histogram, double clip) {
+        int[] bounds = histogram.bounds(clip);
+        return ChannelLut.of(stretch(bounds[0], bounds[1]), stretch(bounds[2], bounds[3]), stretch(bounds[4], bounds[5]));
+    }
+
+    static ChannelLut autoContrast(Histogram histogram, double clip) {
+        int[] bounds = histogram.bounds(clip);
+        return ChannelLut.of(stretch(bounds[6], bounds[7]));
+    }
+
+    private static IntUnaryOperator stretch(int low, int high) {
+        if (high <= low) {
+            return IntUnaryOperator.identity();
+        }
+        return value -> value <= low ? 0 : value >= high ? 255 : ((value - low) * 255 + (high - low) / 2) / (high - low);
     }
 
     public static BufferedImage applyPosterizeFilter(BufferedImage image) {
-        return applyFilter(image, (color) -> {
-            int red = (color.getRed() / 64) * 64;
-            int green = (color.getGreen() / 64) * 64;
-            int blue = (color.getBlue() / 64) * 64;
-            return new Color(red, green, blue);
-        });
+        return applyPixelFilter(image, posterize());
+    }
+
+    static PixelTransformer posterize() {
+        return ChannelLut.of(value -> (value / 64) * 64);
     }
 
     public static BufferedImage applyTintFilter(BufferedImage image, Color tint) {
-        return applyFilter(image, (color) -> {
-            int red = (color.getRed() + tint.getRed()) / 2;
-            int green = (color.getGreen() + tint.getGreen()) / 2;
-            int blue = (color.getBlue() + tint.getBlue()) / 2;
-            return new Color(red, green, blue);
-        });
+        return applyPixelFilter(image, tint(tint));
+    }
+
+    static PixelTransformer tint(Color tint) {
+        return PointKernels.tint(tintLut(tint), tint);
+    }
+
+    static ChannelLut tintLut(Color tint) {
+        return ChannelLut.of(
+                value -> (value + tint.getRed()) / 2,
+                value -> (value + tint.getGreen()) / 2,
+                value -> (value + tint.getBlue()) / 2);
     }
 
     public static BufferedImage applyColorShiftRightFilter(BufferedImage image) {
-        return applyFilter(image, (color) -> new Color(color.getBlue(), color.getRed(), color.getGreen()));
+        return applyPixelFilter(image, colorShiftRight());
+    }
+
+    static PixelTransformer colorShiftRight() {
+        return ChannelLut.route(ChannelLut.BLUE, ChannelLut.RED, ChannelLut.GREEN);
     }
 
     public static BufferedImage applyColorShiftLeftFilter(BufferedImage image) {
-        return applyFilter(image, (color) -> new Color(color.getGreen(), color.getBlue(), color.getRed()));
+        return applyPixelFilter(image, colorShiftLeft());
+    }
+
+    static PixelTransformer colorShiftLeft() {
+        return ChannelLut.route(ChannelLut.GREEN, ChannelLut.BLUE, ChannelLut.RED);
     }
 
     public static BufferedImage applyMirrorFilter(BufferedImage image) {
-        BufferedImage newImage = new BufferedImage(image.getWidth(), image.getHeight(), image.getType());
-        for (int x = 0; x < image.getWidth(); x++) {
-            for (int y = 0; y < image.getHeight(); y++) {
-                newImage.setRGB(image.getWidth() - x - 1, y, image.getRGB(x, y));
-            }
-        }
-        return newImage;
+        return GeometricTransform.of(image.getWidth(), image.getHeight()).mirror().apply(image);
+    }
+
+    public static BufferedImage applyFlipFilter(BufferedImage image) {
+        return GeometricTransform.of(image.getWidth(), image.getHeight()).flip().apply(image);
+    }
+
+    public static BufferedImage applyRotate90Filter(BufferedImage image) {
+        return GeometricTransform.of(image.getWidth(), image.getHeight()).rotate(90).apply(image);
+    }
+
+    public static BufferedImage applyRotate180Filter(BufferedImage image) {
+        return GeometricTransform.of(image.getWidth(), image.getHeight()).rotate(180).apply(image);
+    }
+
+    public static BufferedImage applyRotate270Filter(BufferedImage image) {
+        return GeometricTransform.of(image.getWidth(), image.getHeight()).rotate(270).apply(image);
+    }
+
+    public static BufferedImage applyCropFilter(BufferedImage image, Rectangle area) {
+        return GeometricTransform.of(image.getWidth(), image.getHeight()).crop(area).apply(image);
     }
 
     public static BufferedImage applyPixelateFilter(BufferedImage image, int pixelSize) {
-        return applyPositionFilter(image, (color, x, y) -> {
-            int avgRed = 0, avgGreen = 0, avgBlue = 0, count = 0;
-            for (int i = 0; i < pixelSize; i++) {
-                for (int j = 0; j < pixelSize; j++) {
-                    int newX = x + i, newY = y + j;
-                    if (newX < image.getWidth() && newY < image.getHeight()) {
-                        Color neighborColor = new Color(image.getRGB(newX, newY));
-                        avgRed += neighborColor.getRed();
-                        avgGreen += neighborColor.getGreen();
-                        avgBlue += neighborColor.getBlue();
-                        count++;
-                    }
-                }
-            }
-            avgRed /= count;
-            avgGreen /= count;
-            avgBlue /= count;
-            return new Color(avgRed, avgGreen, avgBlue);
-        });
+        return applyPixelateFilter(image, pixelSize, 0, 0);
+    }
+
+    public static BufferedImage applyPixelateFilter(BufferedImage image, int pixelSize, int offsetX, int offsetY) {
+        PackedRaster source = PackedRaster.of(image);
+        return applyPositionFilter(source, null, pixelate(source, fullArea(source), pixelSize, offsetX, offsetY));
+    }
+
+    static PixelPositionTransformer pixelate(PackedRaster source, Rectangle area, int pixelSize, int offsetX, int offsetY) {
+        if (pixelSize < 1) {
+            throw new IllegalArgumentException("Block size must be positive: " + pixelSize);
+        }
+        int shiftX = Math.floorMod(offsetX, pixelSize), shiftY = Math.floorMod(offsetY, pixelSize);
+        int left = Math.max(0, shiftX + Math.floorDiv(area.x - shiftX, pixelSize) * pixelSize);
+        int top = Math.max(0, shiftY + Math.floorDiv(area.y - shiftY, pixelSize) * pixelSize);
+        int right = Math.min(source.width, shiftX + (Math.floorDiv(area.x + area.width - 1 - shiftX, pixelSize) + 1) * pixelSize);
+        int bottom = Math.min(source.height, shiftY + (Math.floorDiv(area.y + area.height - 1 - shiftY, pixelSize) + 1) * pixelSize);
+        Rectangle window = new Rectangle(left, top, right - left, bottom - top);
+        return windowed(source, window, (pixels, width, height) ->
+                PixelateEngine.pixelate(pixels, width, height, pixelSize, offsetX - window.x, offsetY - window.y));
     }
 
     public static BufferedImage applyShowBordersFilter(BufferedImage image) {
+        PackedRaster source = PackedRaster.of(image);
+        return applyPositionFilter(source, null, showBorders(source));
+    }
+
+    static PixelPositionTransformer showBorders(PackedRaster source) {
         int[][] sobelX = {
                 { -1, 0, 1 },
                 { -2, 0, 2 },
@@ -88,161 +159,227 @@ public class ImageFilterProcessor {
                 { 1, 2, 1 }
         };
 
-        return applyPositionFilter(image, (color, x, y) -> {
+        int[] pixels = source.pixels;
+        int width = source.width, height = source.height;
+        return (argb, x, y) -> {
             int gxRed = 0, gyRed = 0, gxGreen = 0, gyGreen = 0, gxBlue = 0, gyBlue = 0;
             for (int i = -1; i <= 1; i++) {
                 for (int j = -1; j <= 1; j++) {
                     int newX = x + i, newY = y + j;
-                    if (newX >= 0 && newX < image.getWidth() && newY >= 0 && newY < image.getHeight()) {
-                        Color neighborColor = new Color(image.getRGB(newX, newY));
-                        gxRed += sobelX[i + 1][j + 1] * neighborColor.getRed();
-                        gyRed += sobelY[i + 1][j + 1] * neighborColor.getRed();
-                        gxGreen += sobelX[i + 1][j + 1] * neighborColor.getGreen();
-                        gyGreen += sobelY[i + 1][j + 1] * neighborColor.getGreen();
-                        gxBlue += sobelX[i + 1][j + 1] * neighborColor.getBlue();
-                        gyBlue += sobelY[i + 1][j + 1] * neighborColor.getBlue();
+                    if (newX >= 0 && newX < width && newY >= 0 && newY < height) {
+                        int neighbor = pixels[newY * width + newX];
+                        gxRed += sobelX[i + 1][j + 1] * red(neighbor);
+                        gyRed += sobelY[i + 1][j + 1] * red(neighbor);
+                        gxGreen += sobelX[i + 1][j + 1] * green(neighbor);
+                        gyGreen += sobelY[i + 1][j + 1] * green(neighbor);
+                        gxBlue += sobelX[i + 1][j + 1] * blue(neighbor);
+                        gyBlue += sobelY[i + 1][j + 1] * blue(neighbor);
                     }
                 }
             }
             int gradientRed = Math.min(255, (int) Math.sqrt(gxRed * gxRed + gyRed * gyRed));
             int gradientGreen = Math.min(255, (int) Math.sqrt(gxGreen * gxGreen + gyGreen * gyGreen));
             int gradientBlue = Math.min(255, (int) Math.sqrt(gxBlue * gxBlue + gyBlue * gyBlue));
-            return new Color(gradientRed, gradientGreen, gradientBlue);
-        });
+            return rgb(gradientRed, gradientGreen, gradientBlue);
+        };
     }
 
     public static BufferedImage applyEliminateRedFilter(BufferedImage image) {
-        return applyFilter(image, (color) -> new Color(0, color.getGreen(), color.getBlue()));
+        return applyPixelFilter(image, eliminateRed());
+    }
+
+    static PixelTransformer eliminateRed() {
+        return ChannelLut.of(value -> 0, value -> value, value -> value);
     }
 
     public static BufferedImage applyEliminateGreenFilter(BufferedImage image) {
-        return applyFilter(image, (color) -> new Color(color.getRed(), 0, color.getBlue()));
+        return applyPixelFilter(image, eliminateGreen());
+    }
+
+    static PixelTransformer eliminateGreen() {
+        return ChannelLut.of(value -> value, value -> 0, value -> value);
     }
 
     public static BufferedImage applyEliminateBlueFilter(BufferedImage image) {
-        return applyFilter(image, (color) -> new Color(color.getRed(), color.getGreen(), 0));
+        return applyPixelFilter(image, eliminateBlue());
+    }
+
+    static PixelTransformer eliminateBlue() {
+        return ChannelLut.of(value -> value, value -> value, value -> 0);
     }
 
     public static BufferedImage applySepiaFilter(BufferedImage image) {
-        return applyFilter(image, (color) -> {
-            int tr = (int)(0.393 * color.getRed() + 0.769 * color.getGreen() + 0.189 * color.getBlue());
-            int tg = (int)(0.349 * color.getRed() + 0.686 * color.getGreen() + 0.168 * color.getBlue());
-            int tb = (int)(0.272 * color.getRed() + 0.534 * color.getGreen() + 0.131 * color.getBlue());
+        return applyPixelFilter(image, sepia());
+    }
 
-            tr = Math.min(255, tr);
-            tg = Math.min(255, tg);
-            tb = Math.min(255, tb);
+    static PixelTransformer sepia() {
+        return PointKernels.sepia(ImageFilterProcessor::sepia);
+    }
 
-            return new Color(tr, tg, tb);
-        });
+    static int sepia(int argb) {
+        int red = red(argb), green = green(argb), blue = blue(argb);
+        int tr = (int)(0.393 * red + 0.769 * green + 0.189 * blue);
+        int tg = (int)(0.349 * red + 0.686 * green + 0.168 * blue);
+        int tb = (int)(0.272 * red + 0.534 * green + 0.131 * blue);
+
+        tr = Math.min(255, tr);
+        tg = Math.min(255, tg);
+        tb = Math.min(255, tb);
+
+        return rgb(tr, tg, tb);
     }
 
     public static BufferedImage applyLighterFilter(BufferedImage image) {
-        return applyFilter(image, (color) -> {
-            int red = Math.min(255, color.getRed() + 30);
-            int green = Math.min(255, color.getGreen() + 30);
-            int blue = Math.min(255, color.getBlue() + 30);
-            return new Color(red, green, blue);
-        });
+        return applyPixelFilter(image, lighter());
+    }
+
+    static PixelTransformer lighter() {
+        return ChannelLut.of(value -> Math.min(255, value + 30));
     }
 
     public static BufferedImage applyDarkerFilter(BufferedImage image) {
-        return applyFilter(image, (color) -> {
-            int red = Math.max(0, color.getRed() - 30);
-            int green = Math.max(0, color.getGreen() - 30);
-            int blue = Math.max(0, color.getBlue() - 30);
-            return new Color(red, green, blue);
-        });
+        return applyPixelFilter(image, darker());
+    }
+
+    static PixelTransformer darker() {
+        return ChannelLut.of(value -> Math.max(0, value - 30));
     }
 
     public static BufferedImage applyVignetteFilter(BufferedImage image) {
-        int centerX = image.getWidth() / 2;
-        int centerY = image.getHeight() / 2;
-        double maxDistance = Math.sqrt(centerX * centerX + centerY * centerY);
+        return applyPositionFilter(image, null, vignette(image.getWidth(), image.getHeight()), RasterFormat.COLOR);
+    }
 
-        return applyPositionFilter(image, (color, x, y) -> {
-            double distance = Math.sqrt(Math.pow(centerX - x, 2) + Math.pow(centerY - y, 2));
+    static PixelPositionTransformer vignette(int width, int height) {
+        return vignette(width, height, 0, 0);
+    }
+
+    static PixelPositionTransformer vignette(int width, int height, int left, int top) {
+        int centerX = left + width / 2;
+        int centerY = top + height / 2;
+        double maxDistance = Math.sqrt((double) (width / 2) * (width / 2) + (double) (height / 2) * (height / 2));
+
+        return (argb, x, y) -> {
+            double dx = centerX - x, dy = centerY - y;
+            double distance = Math.sqrt(dx * dx + dy * dy);
             double vignetteFactor = distance / maxDistance;
-            int red = (int) (color.getRed() * (1 - vignetteFactor));
-            int green = (int) (color.getGreen() * (1 - vignetteFactor));
-            int blue = (int) (color.getBlue() * (1 - vignetteFactor));
-            return new Color(red, green, blue);
-        });
+            int red = (int) (red(argb) * (1 - vignetteFactor));
+            int green = (int) (green(argb) * (1 - vignetteFactor));
+            int blue = (int) (blue(argb) * (1 - vignetteFactor));
+            return rgb(red, green, blue);
+        };
     }
 
     public static BufferedImage applyAddNoiseFilter(BufferedImage image) {
-        return applyFilter(image, (color) -> {
-            int noise = (int) (Math.random() * 50) - 25;
-            int red = Math.min(255, Math.max(0, color.getRed() + noise));
-            int green = Math.min(255, Math.max(0, color.getGreen() + noise));
-            int blue = Math.min(255, Math.max(0, color.getBlue() + noise));
-            return new Color(red, green, blue);
-        });
+        return applyPositionFilter(image, null, NoiseGenerator.DEFAULT, RasterFormat.COLOR);
     }
 
     public static BufferedImage applySolarizeFilter(BufferedImage image) {
-        return applyFilter(image, (color) -> {
-            int threshold = 128;
-            int red = color.getRed() > threshold ? 255 - color.getRed() : color.getRed();
-            int green = color.getGreen() > threshold ? 255 - color.getGreen() : color.getGreen();
-            int blue = color.getBlue() > threshold ? 255 - color.getBlue() : color.getBlue();
-            return new Color(red, green, blue);
-        });
+        return applyPixelFilter(image, solarize());
+    }
+
+    static PixelTransformer solarize() {
+        int threshold = 128;
+        return ChannelLut.of(value -> value > threshold ? 255 - value : value);
     }
 
     public static BufferedImage applyVintageFilter(BufferedImage image) {
-        BufferedImage sepiaImage = applySepiaFilter(image);
-        return applyAddNoiseFilter(sepiaImage);
+        return applyPositionFilter(image, null, vintage(NoiseGenerator.DEFAULT), RasterFormat.COLOR);
+    }
+
+    static PixelPositionTransformer vintage(NoiseGenerator noise) {
+        return (argb, x, y) -> noise.apply(sepia(argb), x, y);
     }
 
     public static BufferedImage applyBlurFilter(BufferedImage image) {
-        int offset = 1;
-        return applyPositionFilter(image, (color, x, y) -> {
-            int sumRed = 0;
-            int sumGreen = 0;
-            int sumBlue = 0;
-            int count = 0;
-
-            for (int i = -offset; i <= offset; i++) {
-                for (int j = -offset; j <= offset; j++) {
-                    int neighborX = x + i;
-                    int neighborY = y + j;
-
-                    if (neighborX >= 0 && neighborX < image.getWidth() && neighborY >= 0 && neighborY < image.getHeight()) {
-                        Color neighborColor = new Color(image.getRGB(neighborX, neighborY));
-                        sumRed += neighborColor.getRed();
-                        sumGreen += neighborColor.getGreen();
-                        sumBlue += neighborColor.getBlue();
-                        count++;
-                    }
-                }
-            }
+        return applyBlurFilter(image, 1, EdgeMode.CROP);
+    }
 
-            int avgRed = sumRed / count;
-            int avgGreen = sumGreen / count;
-            int avgBlue = sumBlue / count;
+    public static BufferedImage applyBlurFilter(BufferedImage image, int radius, EdgeMode edgeMode) {
+        PackedRaster source = PackedRaster.of(image);
+        return applyPositionFilter(source, null, blur(source, fullArea(source), radius, edgeMode));
+    }
 
-            return new Color(avgRed, avgGreen, avgBlue);
-        });
+    static PixelPositionTransformer blur(PackedRaster source, Rectangle area, int radius, EdgeMode edgeMode) {
+        return windowed(source, halo(source, area, radius, edgeMode), (pixels, width, height) ->
+                BlurEngine.boxBlur(pixels, width, height, radius, edgeMode));
+    }
+
+    public static BufferedImage applyGaussianBlurFilter(BufferedImage image, double sigma, EdgeMode edgeMode) {
+        PackedRaster source = PackedRaster.of(image);
+        return applyPositionFilter(source, null, gaussianBlur(source, fullArea(source), sigma, edgeMode));
+    }
+
+    static PixelPositionTransformer gaussianBlur(PackedRaster source, Rectangle area, double sigma, EdgeMode edgeMode) {
+        int radius = Arrays.stream(BlurEngine.gaussianBoxRadii(sigma)).sum();
+        return windowed(source, halo(source, area, radius, edgeMode), (pixels, width, height) ->
+                BlurEngine.gaussianBlur(pixels, width, height, sigma, edgeMode));
+    }
+
+    /**
+     * Wrapping windows that reach past an edge read the opposite side, so they need the whole image.
+     */
+    private static Rectangle halo(PackedRaster source, Rectangle area, int radius, EdgeMode edgeMode) {
+        Rectangle grown = new Rectangle(area.x - radius, area.y - radius, area.width + 2 * radius, area.height + 2 * radius);
+        Rectangle bounds = fullArea(source);
+        return edgeMode == EdgeMode.WRAP && !bounds.contains(grown) ? bounds : grown.intersection(bounds);
+    }
+
+    /**
+     * Edge handling inside the kernel is only correct where the window edge is the image edge,
+     * so callers grow the window by the kernel's halo.
+     */
+    private static PixelPositionTransformer windowed(PackedRaster source, Rectangle window, ArrayKernel kernel) {
+        int[] result = kernel.apply(source.read(window), window.width, window.height);
+        int left = window.x, top = window.y, width = window.width;
+        return (argb, x, y) -> result[(y - top) * width + (x - left)];
+    }
+
+    private static Rectangle fullArea(PackedRaster source) {
+        return new Rectangle(source.width, source.height);
     }
 
     public static BufferedImage applyContrastFilter(BufferedImage image) {
-        return applyFilter(image, (color) -> {
-            int red = adjustContrast(color.getRed(), 1.8);
-            int green = adjustContrast(color.getGreen(), 1.8);
-            int blue = adjustContrast(color.getBlue(), 1.8);
+        return applyPixelFilter(image, contrast());
+    }
 
-            return new Color(red, green, blue);
-        });
+    static PixelTransformer contrast() {
+        return ChannelLut.of(value -> adjustContrast(value, 1.8));
     }
 
     public static BufferedImage applyNegativeFilter(BufferedImage image) {
-        return applyFilter(image, (color) -> {
-            int red = 255 - color.getRed();
-            int green = 255 - color.getGreen();
-            int blue = 255 - color.getBlue();
-            return new Color(red, green, blue);
-        });
+        return applyPixelFilter(image, negative());
+    }
+
+    static PixelTransformer negative() {
+        return ChannelLut.of(value -> 255 - value);
+    }
+
+    public static int getParallelism() {
+        return TileExecutor.getParallelism();
+    }
+
+    public static void setParallelism(int parallelism) {
+        TileExecutor.setParallelism(parallelism);
+    }
+
+    static int red(int argb) {
+        return (argb >> 16) & 0xFF;
+    }
+
+    static int green(int argb) {
+        return (argb >> 8) & 0xFF;
+    }
+
+    static int blue(int argb) {
+        return argb & 0xFF;
+    }
+
+    static int luma(int argb) {
+        return (77 * red(argb) + 150 * green(argb) + 29 * blue(argb) + 128) >> 8;
+    }
+
+    static int rgb(int red, int green, int blue) {
+        return 0xFF000000 | (red << 16) | (green << 8) | blue;
     }
 
     private static int adjustContrast(int value, double contrastFactor) {
@@ -252,45 +389,201 @@ public class ImageFilterProcessor {
         return Math.max(0, Math.min(255, newValue));
     }
 
-    private static BufferedImage applyFilter(BufferedImage image, ColorTransformer transformer) {
-        return applyPositionFilter(image, (color, x, y) -> transformer.apply(color));
+    static BufferedImage applyPixelFilter(BufferedImage image, PixelTransformer transformer) {
+        return applyPixelFilter(image, null, transformer);
     }
 
-    private static BufferedImage applyPositionFilter(BufferedImage image, ColorPositionTransformer transformer) {
-        BufferedImage newImage = new BufferedImage(image.getWidth(), image.getHeight(), image.getType());
+    static BufferedImage applyPixelFilter(BufferedImage image, Region region, PixelTransformer transformer) {
+        return applyPixelFilter(image, region, transformer, RasterFormat.COLOR);
+    }
 
-        List<Point> points = MainPanel.points;
-        int startX = 0, endX = MainPanel.IMAGE_WIDTH, startY = 0, endY = MainPanel.IMAGE_HEIGHT;
+    static BufferedImage applyPixelFilter(BufferedImage image, Region region, PixelTransformer transformer, RasterFormat format) {
+        return transform(image, new BufferedImage(image.getWidth(), image.getHeight(), format.imageType(image)), region, rows(transformer));
+    }
 
-        if (points.size() == 4) {
-            startX = points.get(0).x;
-            endX = points.get(2).x;
-            startY = points.get(0).y;
-            endY = points.get(1).y;
-        }
+    static BufferedImage applyPixelFilter(PackedRaster source, Region region, PixelTransformer transformer) {
+        return applyPixelFilter(source, region, transformer, RasterFormat.COLOR);
+    }
 
-        for (int x = 0; x < MainPanel.IMAGE_WIDTH; x++) {
-            for (int y = 0; y < MainPanel.IMAGE_HEIGHT; y++) {
-                Color color = new Color(image.getRGB(x, y));
-                if (x >= startX && x <= endX && y >= startY && y <= endY) {
-                    newImage.setRGB(x, y, transformer.apply(color, x, y).getRGB());
-                } else {
-                    newImage.setRGB(x, y, color.getRGB());
+    static BufferedImage applyPixelFilter(PackedRaster source, Region region, PixelTransformer transformer, RasterFormat format) {
+        return transform(source, source.copy(format), region, rows(transformer));
+    }
+
+    /**
+     * Only for images nothing else refers to, of the format the filter produces.
+     */
+    static BufferedImage applyPixelFilterInPlace(BufferedImage image, Region region, PixelTransformer transformer) {
+        return transform(image, image, region, rows(transformer));
+    }
+
+    static BufferedImage applyPositionFilter(PackedRaster source, Region region, PixelPositionTransformer transformer) {
+        return applyPositionFilter(source, region, transformer, RasterFormat.COLOR);
+    }
+
+    static BufferedImage applyPositionFilter(PackedRaster source, Region region, PixelPositionTransformer transformer, RasterFormat format) {
+        return transform(source, source.copy(format), region, positions(transformer));
+    }
+
+    static BufferedImage applyPositionFilter(BufferedImage image, Region region, PixelPositionTransformer transformer, RasterFormat format) {
+        return transform(image, new BufferedImage(image.getWidth(), image.getHeight(), format.imageType(image)), region, positions(transformer));
+    }
+
+    /**
+     * The run may be filtered in place, so its alpha is saved first.
+     */
+    private static RowTransformer keepingAlpha(RowTransformer rows, int[] alpha) {
+        return (sourcePixels, targetPixels, row, y, from, to) -> {
+            System.arraycopy(sourcePixels, row + from, alpha, 0, to - from);
+            rows.apply(sourcePixels, targetPixels, row, y, from, to);
+            for (int x = from; x < to; x++) {
+                targetPixels[row + x] = targetPixels[row + x] & 0xFFFFFF | alpha[x - from] & 0xFF000000;
+            }
+        };
+    }
+
+    private static RowTransformer rows(PixelTransformer transformer) {
+        return (sourcePixels, targetPixels, row, y, from, to) -> transformer.applyRow(sourcePixels, targetPixels, row + from, row + to);
+    }
+
+    private static RowTransformer positions(PixelPositionTransformer transformer) {
+        return (sourcePixels, targetPixels, row, y, from, to) -> {
+            for (int x = from; x < to; x++) {
+                targetPixels[row + x] = transformer.apply(sourcePixels[row + x] | 0xFF000000, x, y);
+            }
+        };
+    }
+
+    /**
+     * {@code target} may be {@code image}. Images not stored as packed ints are unpacked a band of rows at a time,
+     * so no full-size copy is made.
+     */
+    private static BufferedImage transform(BufferedImage image, BufferedImage target, Region region, RowTransformer filter) {
+        if (PackedRaster.isDirect(image) && PackedRaster.isDirect(target)) {
+            PackedRaster source = PackedRaster.of(image);
+            PackedRaster result = PackedRaster.of(target);
+            if (result.pixels != source.pixels) {
+                System.arraycopy(source.pixels, 0, result.pixels, 0, source.pixels.length);
+            }
+            return transform(source, result, region, filter);
+        }
+        boolean alpha = image.getColorModel().hasAlpha();
+        int width = image.getWidth(), height = image.getHeight();
+        Rectangle area = region == null ? new Rectangle(width, height) : region.clip(width, height);
+        boolean masked = region != null && !region.isRectangular();
+        int bufferRows = Math.max(1, BAND_PIXELS / width);
+        FilterJob job = FilterJob.current();
+        AtomicInteger finishedRows = new AtomicInteger();
+
+        TileExecutor.forEachBand(width, height, (bandStartY, bandEndY) -> {
+            int[] pixels = new int[Math.min(bufferRows, bandEndY - bandStartY) * width];
+            RowTransformer rows = alpha ? keepingAlpha(filter, new int[area.width]) : filter;
+            for (int startY = bandStartY; startY < bandEndY; startY += bufferRows) {
+                int endY = Math.min(bandEndY, startY + bufferRows);
+                PackedRaster.readRows(image, startY, endY, pixels);
+                for (int y = Math.max(startY, area.y); y < Math.min(endY, area.y + area.height); y++) {
+                    applyRow(rows, region, masked, pixels, pixels, (y - startY) * width, y, area.x, area.x + area.width);
                 }
+                PackedRaster.writeRows(target, startY, endY, pixels);
+            }
+            if (job != null) {
+                double progress = finishedRows.addAndGet(bandEndY - bandStartY) / (double) height;
+                job.bandCompleted(target, new Rectangle(0, bandStartY, width, bandEndY - bandStartY), progress);
+            }
+        });
+        return target;
+    }
+
+    private static BufferedImage transform(PackedRaster source, PackedRaster target, Region region, RowTransformer filter) {
+        boolean alpha = source.hasAlpha();
+        int[] sourcePixels = source.pixels;
+        int[] targetPixels = target.pixels;
+
+        Rectangle area = region == null ? fullArea(source) : region.clip(source.width, source.height);
+        boolean masked = region != null && !region.isRectangular();
+        int width = source.width, left = area.x, right = area.x + area.width;
+        FilterJob job = FilterJob.current();
+        BufferedImage partial = target.sharedImage();
+        AtomicInteger finishedRows = new AtomicInteger();
+
+        TileExecutor.forEachBand(area.width, area.height, (bandStartY, bandEndY) -> {
+            RowTransformer rows = alpha ? keepingAlpha(filter, new int[area.width]) : filter;
+            for (int y = area.y + bandStartY; y < area.y + bandEndY; y++) {
+                applyRow(rows, region, masked, sourcePixels, targetPixels, y * width, y, left, right);
             }
+            if (job != null) {
+                double progress = finishedRows.addAndGet(bandEndY - bandStartY) / (double) area.height;
+                job.bandCompleted(partial, new Rectangle(left, area.y + bandStartY, area.width, bandEndY - bandStartY), progress);
+            }
+        });
+
+        return target.toImage();
+    }
+
+    private static void applyRow(RowTransformer rows, Region region, boolean masked, int[] sourcePixels, int[] targetPixels,
+                                 int row, int y, int left, int right) {
+        if (!masked) {
+            rows.apply(sourcePixels, targetPixels, row, y, left, right);
+            return;
         }
+        for (int x = left; x < right; ) {
+            while (x < right && !region.contains(x, y)) {
+                x++;
+            }
+            int from = x;
+            while (x < right && region.contains(x, y)) {
+                x++;
+            }
+            if (from < x) {
+                rows.apply(sourcePixels, targetPixels, row, y, from, x);
+            }
+        }
+    }
 
-        points.clear();
-        return newImage;
+    @FunctionalInterface
+    interface PixelTransformer {
+        int apply(int argb);
+
+        /**
+         * Treats every input pixel as opaque, like {@link #apply(int)} callers do.
+         */
+        default void applyRow(int[] source, int[] target, int from, int to) {
+            for (int i = from; i < to; i++) {
+                target[i] = apply(source[i] | 0xFF000000);
+            }
+        }
+
+        /**
+         * Rows go through both filters while they are in cache, so either one may use its own row kernel.
+         */
+        default PixelTransformer andThen(PixelTransformer next) {
+            PixelTransformer first = this;
+            return new PixelTransformer() {
+                @Override
+                public int apply(int argb) {
+                    return next.apply(first.apply(argb));
+                }
+
+                @Override
+                public void applyRow(int[] source, int[] target, int from, int to) {
+                    first.applyRow(source, target, from, to);
+                    next.applyRow(target, target, from, to);
+                }
+            };
+        }
+    }
+
+    @FunctionalInterface
+    interface PixelPositionTransformer {
+        int apply(int argb, int x, int y);
     }
 
     @FunctionalInterface
-    private interface ColorTransformer {
-        Color apply(Color color);
+    private interface RowTransformer {
+        void apply(int[] sourcePixels, int[] targetPixels, int row, int y, int from, int to);
     }
 
     @FunctionalInterface
-    private interface ColorPositionTransformer {
-        Color apply(Color color, int x, int y);
+    private interface ArrayKernel {
+        int[] apply(int[] pixels, int width, int height);
     }
 }
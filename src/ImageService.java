@@ -0,0 +1,340 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Embedded HTTP service: {@code POST /filter?filters=sepia,blur:3&format=jpg&quality=80} answers with the
+ * filtered image, {@code GET /filters} lists the filters. Requests are admitted by upload slots and then by a
+ * megapixel budget, waiting up to a timeout before a 503; only a few images are worked on at once.
+ */
+final class ImageService {
+
+    private static final String USAGE = String.join(System.lineSeparator(),
+            "Usage: serve [options]",
+            "  POST /filter?filters=<chain>[&format=png|jpg|tiff|...][&deflate=0-9][&quality=0-100] with an image as the body;",
+            "                       the chain may not contain cube: LUT files",
+            "  GET  /filters",
+            "  --host               address to listen on (default 127.0.0.1)",
+            "  --port               port to listen on, 0 for any free port (default 8080)",
+            "  --megapixels         megapixels of images admitted at once (default 256)",
+            "  --workers            images decoded, filtered and encoded at once (default 2)",
+            "  --max-upload-mb      largest accepted request body in MB (default 64)",
+            "  --uploads            requests admitted at once, from reading the body on (default 16)",
+            "  --admission-timeout  seconds a request waits for room before a 503 (default 30)",
+            "  --threads            threads per filter (default all cores)");
+
+    private static final int PIXELS_PER_PERMIT = 1_000_000;
+
+    private final HttpServer server;
+    private final ExecutorService requests;
+    private final int megapixelBudget;
+    private final Semaphore megapixels;
+    private final Semaphore workers;
+    private final Semaphore uploads;
+    private final long maxUploadBytes;
+    private final long admissionTimeoutMillis;
+
+    /**
+     * @param megapixelBudget megapixels of admitted images at once; larger images are refused
+     * @param uploads         requests admitted at once, each buffering a body of up to {@code maxUploadBytes}
+     */
+    ImageService(InetSocketAddress address, int megapixelBudget, int workers, int uploads, long maxUploadBytes,
+                 long admissionTimeoutMillis) throws IOException {
+        if (megapixelBudget < 1 || workers < 1 || uploads < 1 || maxUploadBytes < 1 || admissionTimeoutMillis < 0) {
+            throw new IllegalArgumentException("Service limits must be positive");
+        }
+        this.megapixelBudget = megapixelBudget;
+        this.megapixels = new Semaphore(megapixelBudget, true);
+        this.workers = new Semaphore(workers, true);
+        this.uploads = new Semaphore(uploads, true);
+        this.maxUploadBytes = maxUploadBytes;
+        this.admissionTimeoutMillis = admissionTimeoutMillis;
+        this.requests = requestExecutor(uploads);
+        this.server = HttpServer.create(address, 0);
+        server.setExecutor(requests);
+        server.createContext("/filter", this::handle);
+        server.createContext("/filters", this::handle);
+    }
+
+    private static ExecutorService requestExecutor(int threads) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(threads, task -> {
+                Thread thread = new Thread(task, "request");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    void start() {
+        server.start();
+    }
+
+    /**
+     * Also when it was asked for any free port.
+     */
+    int port() {
+        return server.getAddress().getPort();
+    }
+
+    void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        requests.shutdown();
+    }
+
+    static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        try {
+            String host = "127.0.0.1";
+            int port = 8080, budget = 256, workers = 2, uploads = 16, maxUploadMegabytes = 64, timeoutSeconds = 30;
+            for (int i = 0; i < args.length; i++) {
+                String value = i + 1 < args.length ? args[i + 1] : null;
+                if (value == null) {
+                    throw new IllegalArgumentException("Missing value for " + args[i]);
+                }
+                switch (args[i++]) {
+                    case "--host": host = value; break;
+                    case "--port": port = BatchProcessor.integer(args[i - 1], value); break;
+                    case "--megapixels": budget = BatchProcessor.positive(args[i - 1], value); break;
+                    case "--workers": workers = BatchProcessor.positive(args[i - 1], value); break;
+                    case "--uploads": uploads = BatchProcessor.positive(args[i - 1], value); break;
+                    case "--max-upload-mb": maxUploadMegabytes = BatchProcessor.positive(args[i - 1], value); break;
+                    case "--admission-timeout": timeoutSeconds = BatchProcessor.integer(args[i - 1], value); break;
+                    case "--threads": ImageFilterProcessor.setParallelism(BatchProcessor.positive(args[i - 1], value)); break;
+                    default: throw new IllegalArgumentException("Unknown option: " + args[i - 1]);
+                }
+            }
+            ImageService service = new ImageService(new InetSocketAddress(host, port), budget, workers, uploads,
+                    maxUploadMegabytes * 1024L * 1024, TimeUnit.SECONDS.toMillis(timeoutSeconds));
+            service.start();
+            System.out.println("Listening on http://" + host + ":" + service.port() + "/");
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+        } catch (IOException e) {
+            System.err.println("Service failed to start: " + e);
+            System.exit(1);
+        }
+    }
+
+    private void handle(HttpExchange exchange) {
+        try (exchange) {
+            String path = exchange.getRequestURI().getPath();
+            if (path.equals("/filters") && exchange.getRequestMethod().equals("GET")) {
+                respond(exchange, 200, "text/plain; charset=utf-8", FilterRegistry.all().stream()
+                        .map(filter -> filter.describe() + "\n").collect(Collectors.joining()).getBytes(StandardCharsets.UTF_8));
+            } else if (path.equals("/filter") && exchange.getRequestMethod().equals("POST")) {
+                filter(exchange);
+            } else if (path.equals("/filter") || path.equals("/filters")) {
+                exchange.getResponseHeaders().set("Allow", path.equals("/filter") ? "POST" : "GET");
+                error(exchange, 405, "Method not allowed: " + exchange.getRequestMethod());
+            } else {
+                error(exchange, 404, "Not found: " + path);
+            }
+        } catch (IOException | UncheckedIOException e) {
+            // The client went away; there is no one left to answer.
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void filter(HttpExchange exchange) throws IOException, InterruptedException {
+        FilterChain chain;
+        ImageExporter exporter;
+        try {
+            Map<String, String> query = query(exchange.getRequestURI().getRawQuery());
+            String filters = query.get("filters");
+            if (filters == null) {
+                throw new IllegalArgumentException("Missing query parameter: filters");
+            }
+            for (String step : filters.split(",")) {
+                // A LUT step names a file on the server, which clients must not be able to probe or read.
+                if (step.trim().startsWith("cube:")) {
+                    throw new IllegalArgumentException("LUT files are not supported by the service");
+                }
+            }
+            chain = FilterChain.parse(filters);
+            exporter = new ImageExporter(query.getOrDefault("format", "png"),
+                    number(query, "deflate", ImageExporter.DEFAULT_COMPRESSION), number(query, "quality", ImageExporter.DEFAULT_QUALITY));
+        } catch (IllegalArgumentException e) {
+            error(exchange, 400, e.getMessage());
+            return;
+        }
+
+        if (!uploads.tryAcquire(admissionTimeoutMillis, TimeUnit.MILLISECONDS)) {
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            error(exchange, 503, "Too many uploads in progress");
+            return;
+        }
+        try {
+            byte[] upload = readBody(exchange);
+            if (upload == null) {
+                error(exchange, 413, "Request body exceeds " + maxUploadBytes + " bytes");
+                return;
+            }
+            filter(exchange, upload, chain, exporter);
+        } finally {
+            uploads.release();
+        }
+    }
+
+    private void filter(HttpExchange exchange, byte[] upload, FilterChain chain, ImageExporter exporter) throws IOException, InterruptedException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(upload))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                error(exchange, 400, "Request body is not a readable image");
+                return;
+            }
+            ImageReader reader = readers.next();
+            try {
+                long pixels;
+                try {
+                    reader.setInput(input, true, true);
+                    pixels = (long) reader.getWidth(0) * reader.getHeight(0);
+                } catch (IOException e) {
+                    error(exchange, 400, "Request body is not a readable image: " + e.getMessage());
+                    return;
+                }
+                long permits = (pixels + PIXELS_PER_PERMIT - 1) / PIXELS_PER_PERMIT;
+                if (permits > megapixelBudget) {
+                    error(exchange, 413, "Image of " + permits + " megapixels exceeds the limit of " + megapixelBudget);
+                    return;
+                }
+                if (!megapixels.tryAcquire((int) permits, admissionTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                    exchange.getResponseHeaders().set("Retry-After", "1");
+                    error(exchange, 503, "Too many images in progress");
+                    return;
+                }
+                try {
+                    workers.acquire();
+                    try {
+                        BufferedImage result;
+                        try {
+                            result = process(reader, pixels, chain);
+                        } catch (IOException e) {
+                            error(exchange, 400, "Request body is not a readable image: " + e.getMessage());
+                            return;
+                        }
+                        send(exchange, result, exporter);
+                    } finally {
+                        workers.release();
+                    }
+                } finally {
+                    megapixels.release((int) permits);
+                }
+            } catch (IllegalArgumentException e) {
+                error(exchange, 400, e.getMessage());
+            } catch (RuntimeException e) {
+                error(exchange, 500, "Filtering failed: " + e);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private static BufferedImage process(ImageReader reader, long pixels, FilterChain chain) throws IOException {
+        FilterMetrics.Timer timer = FilterMetrics.startStage("decode", 0);
+        BufferedImage image = PackedRaster.toSupportedType(reader.read(0));
+        timer.stop();
+
+        timer = FilterMetrics.startStage("filter", pixels);
+        BufferedImage result = chain.apply(image);
+        timer.stop();
+        return result;
+    }
+
+    /**
+     * Sent chunked, as the length is not known up front.
+     */
+    private static void send(HttpExchange exchange, BufferedImage result, ImageExporter exporter) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", exporter.mimeType());
+        exchange.sendResponseHeaders(200, 0);
+        FilterMetrics.Timer timer = FilterMetrics.startStage("encode", (long) result.getWidth() * result.getHeight());
+        try (OutputStream out = new BufferedOutputStream(exchange.getResponseBody(), 64 * 1024)) {
+            exporter.write(result, out);
+        }
+        timer.stop();
+    }
+
+    /**
+     * {@code null} as soon as the body turns out longer than the upload limit.
+     */
+    private byte[] readBody(HttpExchange exchange) throws IOException {
+        String declared = exchange.getRequestHeaders().getFirst("Content-Length");
+        if (declared != null) {
+            try {
+                if (Long.parseLong(declared) > maxUploadBytes) {
+                    return null;
+                }
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = exchange.getRequestBody()) {
+            for (int length = in.read(buffer); length >= 0; length = in.read(buffer)) {
+                if (body.size() + length > maxUploadBytes) {
+                    return null;
+                }
+                body.write(buffer, 0, length);
+            }
+        }
+        return body.toByteArray();
+    }
+
+    private static Map<String, String> query(String rawQuery) {
+        Map<String, String> parameters = new HashMap<>();
+        if (rawQuery != null) {
+            for (String pair : rawQuery.split("&")) {
+                int equals = pair.indexOf('=');
+                if (equals > 0) {
+                    parameters.put(URLDecoder.decode(pair.substring(0, equals), StandardCharsets.UTF_8),
+                            URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8));
+                }
+            }
+        }
+        return parameters;
+    }
+
+    private static int number(Map<String, String> query, String name, int defaultValue) {
+        String value = query.get(name);
+        return value == null ? defaultValue : BatchProcessor.integer(name, value);
+    }
+
+    private static void error(HttpExchange exchange, int status, String message) throws IOException {
+        respond(exchange, status, "text/plain; charset=utf-8", (message + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void respond(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
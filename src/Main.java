@@ -1,7 +1,18 @@
+import java.util.Arrays;
+
 public class Main {
 
     public static void main(String[] args) {
+        FilterMetrics.registerMBean();
 
+        if (args.length > 0 && args[0].equals("batch")) {
+            BatchProcessor.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("serve")) {
+            ImageService.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
         new Window();
     }
-}
\ No newline at end of file
+}
@@ -3,9 +3,17 @@ import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 import javax.imageio.ImageIO;
 
@@ -20,40 +28,38 @@ public class MainPanel extends JPanel {
     private static final Color BACKGROUND_COLOR = new Color(154, 189, 169, 255);
     private static final Color BORDER_COLOR = Color.BLACK;
     private static final Color FILL_COLOR = Color.WHITE;
-    private static final String[] FILTER_OPTIONS = {
-            "Add Noise Filter",
-            "Blur Filter",
-            "Color Shift Left Filter",
-            "Color Shift Right Filter",
-            "Contrast Filter",
-            "Darker Filter",
-            "Eliminate Blue Filter",
-            "Eliminate Green Filter",
-            "Eliminate Red Filter",
-            "Grayscale Filter",
-            "Lighter Filter",
-            "Mirror Filter",
-            "Negative Filter",
-            "Pixelate Filter",
-            "Posterize Filter",
-            "Sepia Filter",
-            "Show Borders Filter",
-            "Solarize Filter",
-            "Threshold Filter",
-            "Tint Filter",
-            "Vintage Filter",
-            "Vignette Filter"
-    };
-
+    private static final long LARGE_IMAGE_PIXELS = 64_000_000L;
+    private static final Path SCRATCH_DIRECTORY = Paths.get(System.getProperty("java.io.tmpdir"));
+    private static final long HISTORY_MEMORY_BUDGET = 64L * 1024 * 1024;
+    private static final long RESULT_CACHE_BUDGET = 32L * 1024 * 1024;
+    private static final long DISPLAY_TILE_BUDGET = 96L * 1024 * 1024;
+    private static final double MAX_ZOOM = 64;
+    private static final double ZOOM_STEP = 1.25;
+    private static final int PENDING_EXPORTS = 2;
+    private static final Rectangle HISTOGRAM_AREA = new Rectangle(750, 35, 128, 100);
+
+    private BufferedImage originalImage;
+    private TiledImageStore originalStore;
     private BufferedImage selectedImage;
     private BufferedImage filteredImage;
-    private JComboBox<String> filterComboBox;
-
-    private int imageWidth;
-    private int imageHeight;
+    private Histogram histogram;
+    private final EditHistory<EditGraph.Edit> history = new EditHistory<>(HISTORY_MEMORY_BUDGET, SCRATCH_DIRECTORY);
+    private final ResultCache resultCache = new ResultCache(RESULT_CACHE_BUDGET);
+    private final ExportQueue exports = new ExportQueue(1, PENDING_EXPORTS);
+    private CompletableFuture<Long> lastExport;
+    private JComboBox<FilterDescriptor> filterComboBox;
+    private JProgressBar progressBar;
+    private FilterWorker runningFilter;
+    private EditGraph display;
+    private DisplayWorker displayWorker;
+    private EditGraph.Level failedLevel;
+    private double zoom = 1;
+    private double viewX = 0.5;
+    private double viewY = 0.5;
+    private int noiseSeed;
 
     private Control control;
-    public static List<Point> points = new ArrayList<>();
+    private List<Point> points = new ArrayList<>();
 
     public MainPanel() {
         this.setBounds(0, 0, PANEL_WIDTH, PANEL_HEIGHT);
@@ -64,6 +70,8 @@ public class MainPanel extends JPanel {
 
         this.control = new Control(this);
         this.addMouseListener(control);
+        this.addMouseMotionListener(control);
+        this.addMouseWheelListener(control);
     }
 
     private void initializeComponents() {
@@ -76,7 +84,7 @@ public class MainPanel extends JPanel {
         selectImageButton.addActionListener(e -> selectImage());
         this.add(selectImageButton);
 
-        filterComboBox = new JComboBox<>(FILTER_OPTIONS);
+        filterComboBox = new JComboBox<>(FilterRegistry.all().toArray(new FilterDescriptor[0]));
         filterComboBox.setBounds(x, y += 50, width, height);
         this.add(filterComboBox);
 
@@ -88,9 +96,22 @@ public class MainPanel extends JPanel {
         saveImageButton.addActionListener(e -> saveImage());
         this.add(saveImageButton);
 
+        JButton undoButton = createButton("Undo", x, y += 50);
+        undoButton.addActionListener(e -> undo());
+        this.add(undoButton);
+
+        JButton redoButton = createButton("Redo", x, y += 50);
+        redoButton.addActionListener(e -> redo());
+        this.add(redoButton);
+
         JButton backButton = createButton("back", x, y += 100);
         backButton.addActionListener(e -> getOriginalImage());
         this.add(backButton);
+
+        progressBar = new JProgressBar(0, 100);
+        progressBar.setBounds(x, y += 50, width, 20);
+        progressBar.setVisible(false);
+        this.add(progressBar);
     }
 
     private JButton createButton(String text, int x, int y) {
@@ -105,14 +126,30 @@ public class MainPanel extends JPanel {
         if (result == JFileChooser.APPROVE_OPTION) {
             File selectedFile = fileChooser.getSelectedFile();
             try {
-                selectedImage = ImageIO.read(selectedFile);
-
-                this.imageWidth = selectedImage.getWidth();
-                this.imageHeight = selectedImage.getHeight();
-
-                selectedImage = resizeImage(selectedImage, IMAGE_WIDTH, IMAGE_HEIGHT);
-                filteredImage = selectedImage;
-                repaint();
+                Dimension size = TiledImageStore.readSize(selectedFile.toPath());
+                boolean large = size != null && (long) size.width * size.height > LARGE_IMAGE_PIXELS;
+                BufferedImage image = size == null || large ? null : ImageIO.read(selectedFile);
+                if (!large && image == null) {
+                    JOptionPane.showMessageDialog(null, "Error: Unsupported image file.", "Error", JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
+                cancelRunningFilter();
+                closeOriginalStore();
+                if (large) {
+                    originalImage = null;
+                    originalStore = TiledImageStore.open(selectedFile.toPath(), SCRATCH_DIRECTORY);
+                    selectedImage = resizeImage(originalStore.subsample(2 * IMAGE_WIDTH, 2 * IMAGE_HEIGHT), IMAGE_WIDTH, IMAGE_HEIGHT);
+                    display = EditGraph.of(originalStore, DISPLAY_TILE_BUDGET);
+                } else {
+                    originalImage = PackedRaster.toSupportedType(image);
+                    selectedImage = resizeImage(originalImage, IMAGE_WIDTH, IMAGE_HEIGHT);
+                    display = EditGraph.of(originalImage, DISPLAY_TILE_BUDGET);
+                }
+                zoom = 1;
+                viewX = 0.5;
+                viewY = 0.5;
+                history.reset(selectedImage);
+                historyChanged();
             } catch (IOException ioException) {
                 ioException.printStackTrace();
             }
@@ -120,102 +157,194 @@ public class MainPanel extends JPanel {
     }
 
     private BufferedImage resizeImage(BufferedImage originalImage, int targetWidth, int targetHeight) {
-        Image resultingImage = originalImage.getScaledInstance(targetWidth, targetHeight, Image.SCALE_SMOOTH);
-        BufferedImage outputImage = new BufferedImage(targetWidth, targetHeight, BufferedImage.TYPE_INT_RGB);
-        Graphics2D g2d = outputImage.createGraphics();
-        g2d.drawImage(resultingImage, 0, 0, null);
-        g2d.dispose();
-        return outputImage;
+        boolean shrinking = originalImage.getWidth() >= targetWidth && originalImage.getHeight() >= targetHeight;
+        BufferedImage resized = Resampler.resize(originalImage, targetWidth, targetHeight,
+                shrinking ? Resampler.Kernel.BOX : Resampler.Kernel.BICUBIC);
+        int type = resized.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        return resized.getType() == type ? resized : PackedRaster.convert(resized, type);
     }
 
     private void getOriginalImage() {
-        filteredImage = selectedImage;
+        if (selectedImage == null) {
+            return;
+        }
+        cancelRunningFilter();
+        history.reset(selectedImage);
+        historyChanged();
+    }
+
+    private void undo() {
+        stopRunningFilter();
+        if (history.canUndo()) {
+            history.undo();
+            historyChanged();
+        }
+    }
+
+    private void redo() {
+        stopRunningFilter();
+        if (history.canRedo()) {
+            history.redo();
+            historyChanged();
+        }
+    }
+
+    private void historyChanged() {
+        historyChanged(null);
+    }
+
+    private void historyChanged(Histogram histogram) {
+        filteredImage = history.current();
+        this.histogram = histogram != null ? histogram : Histogram.of(filteredImage);
+        display.setEdits(history.edits());
+        repaint();
+    }
+
+    public void zoom(int x, int y, double steps) {
+        if (selectedImage == null) {
+            return;
+        }
+        double pointX = viewLeft() + (x - IMAGE_X) / (IMAGE_WIDTH * zoom);
+        double pointY = viewTop() + (y - IMAGE_Y) / (IMAGE_HEIGHT * zoom);
+        zoom = Math.max(1, Math.min(MAX_ZOOM, zoom * Math.pow(ZOOM_STEP, -steps)));
+        moveView(pointX - (x - IMAGE_X) / (IMAGE_WIDTH * zoom) + 0.5 / zoom, pointY - (y - IMAGE_Y) / (IMAGE_HEIGHT * zoom) + 0.5 / zoom);
+    }
+
+    public void pan(int dx, int dy) {
+        if (selectedImage != null) {
+            moveView(viewX - dx / (IMAGE_WIDTH * zoom), viewY - dy / (IMAGE_HEIGHT * zoom));
+        }
+    }
+
+    /**
+     * Selected points refer to the display, so they are cleared.
+     */
+    private void moveView(double x, double y) {
+        double half = 0.5 / zoom;
+        viewX = Math.max(half, Math.min(1 - half, x));
+        viewY = Math.max(half, Math.min(1 - half, y));
+        points.clear();
         repaint();
     }
 
+    private double viewLeft() {
+        return viewX - 0.5 / zoom;
+    }
+
+    private double viewTop() {
+        return viewY - 0.5 / zoom;
+    }
+
     private void applySelectedFilter() {
         if (selectedImage != null) {
-            String selectedFilter = (String) filterComboBox.getSelectedItem();
+            FilterDescriptor selectedFilter = (FilterDescriptor) filterComboBox.getSelectedItem();
             applyFilter(selectedFilter);
             repaint();
         }
     }
 
-    private void applyFilter(String filter) {
+    private void applyFilter(FilterDescriptor filter) {
         if (points.size() != 4 && !points.isEmpty()) {
             JOptionPane.showMessageDialog(null, "Error: You must have exactly 4 points.", "Error", JOptionPane.ERROR_MESSAGE);
             return;
         }
 
-        switch (filter) {
-            case "Add Noise Filter":
-                filteredImage = ImageFilterProcessor.applyAddNoiseFilter(selectedImage);
-                break;
-            case "Blur Filter":
-                filteredImage = ImageFilterProcessor.applyBlurFilter(selectedImage);
-                break;
-            case "Color Shift Left Filter":
-                filteredImage = ImageFilterProcessor.applyColorShiftLeftFilter(selectedImage);
-                break;
-            case "Color Shift Right Filter":
-                filteredImage = ImageFilterProcessor.applyColorShiftRightFilter(selectedImage);
-                break;
-            case "Contrast Filter":
-                filteredImage = ImageFilterProcessor.applyContrastFilter(selectedImage);
-                break;
-            case "Darker Filter":
-                filteredImage = ImageFilterProcessor.applyDarkerFilter(selectedImage);
-                break;
-            case "Eliminate Blue Filter":
-                filteredImage = ImageFilterProcessor.applyEliminateBlueFilter(selectedImage);
-                break;
-            case "Eliminate Green Filter":
-                filteredImage = ImageFilterProcessor.applyEliminateGreenFilter(selectedImage);
-                break;
-            case "Eliminate Red Filter":
-                filteredImage = ImageFilterProcessor.applyEliminateRedFilter(selectedImage);
-                break;
-            case "Grayscale Filter":
-                filteredImage = ImageFilterProcessor.applyGrayscaleFilter(selectedImage);
-                break;
-            case "Lighter Filter":
-                filteredImage = ImageFilterProcessor.applyLighterFilter(selectedImage);
-                break;
-            case "Mirror Filter":
-                filteredImage = ImageFilterProcessor.applyMirrorFilter(selectedImage);
-                break;
-            case "Negative Filter":
-                filteredImage = ImageFilterProcessor.applyNegativeFilter(selectedImage);
-                break;
-            case "Pixelate Filter":
-                filteredImage = ImageFilterProcessor.applyPixelateFilter(selectedImage, 10); // Add pixel size as required
-                break;
-            case "Posterize Filter":
-                filteredImage = ImageFilterProcessor.applyPosterizeFilter(selectedImage);
-                break;
-            case "Sepia Filter":
-                filteredImage = ImageFilterProcessor.applySepiaFilter(selectedImage);
-                break;
-            case "Show Borders Filter":
-                filteredImage = ImageFilterProcessor.applyShowBordersFilter(selectedImage);
-                break;
-            case "Solarize Filter":
-                filteredImage = ImageFilterProcessor.applySolarizeFilter(selectedImage);
-                break;
-            case "Threshold Filter":
-                filteredImage = ImageFilterProcessor.applyThresholdFilter(selectedImage);
-                break;
-            case "Tint Filter":
-                filteredImage = ImageFilterProcessor.applyTintFilter(selectedImage, new Color(255, 200, 200)); // Add tint color as required
-                break;
-            case "Vintage Filter":
-                filteredImage = ImageFilterProcessor.applyVintageFilter(selectedImage);
-                break;
-            case "Vignette Filter":
-                filteredImage = ImageFilterProcessor.applyVignetteFilter(selectedImage);
-                break;
-            default:
-                throw new IllegalArgumentException("Invalid filter: " + filter);
+        cancelRunningFilter();
+        FilterStep step = FilterStep.of(filter.name);
+        if (filter.kind == FilterKind.STOCHASTIC) {
+            // Each noise edit gets its own pattern; the seed is part of the edit, so replays match it.
+            step = step.with("seed", ++noiseSeed);
+        }
+        runningFilter = new FilterWorker(new EditGraph.Edit(step, selectedRegion(), filteredImage), filteredImage, histogram);
+        progressBar.setValue(0);
+        progressBar.setVisible(true);
+        runningFilter.execute();
+        points.clear();
+    }
+
+    private void cancelRunningFilter() {
+        if (runningFilter != null) {
+            FilterWorker worker = runningFilter;
+            runningFilter = null;
+            worker.stop();
+            progressBar.setVisible(false);
+            repaint();
+        }
+    }
+
+    /**
+     * Undo and redo rewrite the current image, so if the filter may still be reading it, the history moves on to a copy.
+     */
+    private void stopRunningFilter() {
+        FilterWorker worker = runningFilter;
+        cancelRunningFilter();
+        if (worker != null && !worker.hasStopped()) {
+            history.detach();
+        }
+    }
+
+    /**
+     * The preview is drawn stretched to the display area, which it no longer matches after a crop or a quarter turn.
+     */
+    private Rectangle selectedRegion() {
+        if (points.size() != 4) {
+            return null;
+        }
+        int minX = points.stream().mapToInt(p -> p.x).min().orElse(0);
+        int minY = points.stream().mapToInt(p -> p.y).min().orElse(0);
+        int maxX = points.stream().mapToInt(p -> p.x).max().orElse(0);
+        int maxY = points.stream().mapToInt(p -> p.y).max().orElse(0);
+        double scaleX = filteredImage.getWidth() / (IMAGE_WIDTH * zoom), scaleY = filteredImage.getHeight() / (IMAGE_HEIGHT * zoom);
+        double left = viewLeft() * filteredImage.getWidth(), top = viewTop() * filteredImage.getHeight();
+        int x = (int) Math.floor(left + (minX - IMAGE_X) * scaleX);
+        int y = (int) Math.floor(top + (minY - IMAGE_Y) * scaleY);
+        int right = (int) Math.ceil(left + (maxX + 1 - IMAGE_X) * scaleX);
+        int bottom = (int) Math.ceil(top + (maxY + 1 - IMAGE_Y) * scaleY);
+        return new Rectangle(x, y, right - x, bottom - y);
+    }
+
+    private static BufferedImage renderFullResolution(BufferedImage original, List<EditGraph.Edit> edits) {
+        FilterMetrics.Timer timer = FilterMetrics.startStage("render", (long) original.getWidth() * original.getHeight());
+        BufferedImage result = original;
+        for (EditGraph.Edit edit : edits) {
+            result = edit.step(result.getWidth(), result.getHeight()).apply(result, edit.region(result.getWidth(), result.getHeight()));
+        }
+        timer.stop();
+        return result;
+    }
+
+    /**
+     * The caller closes the returned store unless it is the original itself, which happens when there are no edits.
+     */
+    private static TiledImageStore renderFullResolutionTiled(TiledImageStore original, List<EditGraph.Edit> edits) throws IOException {
+        FilterMetrics.Timer timer = FilterMetrics.startStage("render", original.pixelCount());
+        TiledImageStore result = original;
+        for (EditGraph.Edit edit : edits) {
+            FilterChain step = new FilterChain(List.of(edit.step(result.width, result.height)));
+            TiledImageStore next = step.apply(result, edit.region(result.width, result.height));
+            if (result != original) {
+                result.close();
+            }
+            result = next;
+        }
+        timer.stop();
+        return result;
+    }
+
+    private void closeOriginalStore() throws IOException {
+        if (originalStore != null) {
+            TiledImageStore store = originalStore;
+            originalStore = null;
+            if (lastExport == null || lastExport.isDone()) {
+                store.close();
+                return;
+            }
+            lastExport.whenComplete((size, error) -> {
+                try {
+                    store.close();
+                } catch (IOException ignored) {
+                }
+            });
         }
     }
 
@@ -227,19 +356,52 @@ public class MainPanel extends JPanel {
 
             if (userSelection == JFileChooser.APPROVE_OPTION) {
                 File fileToSave = fileChooser.getSelectedFile();
-                if (!fileToSave.getAbsolutePath().endsWith(".png")) {
-                    fileToSave = new File(fileToSave + ".png");
+                ImageExporter exporter = ImageExporter.forFile(fileToSave.toPath());
+                if (!fileToSave.getName().toLowerCase(Locale.ROOT).endsWith("." + exporter.format)) {
+                    fileToSave = new File(fileToSave + "." + exporter.format);
                 }
+                Path target = fileToSave.toPath();
+                List<EditGraph.Edit> edits = history.edits();
+                BufferedImage original = originalImage;
+                TiledImageStore store = originalStore;
                 try {
-                    BufferedImage resizedImage = resizeImage(filteredImage, imageWidth, imageHeight);
-                    ImageIO.write(resizedImage, "png", fileToSave);
-                } catch (IOException ex) {
-                    ex.printStackTrace();
+                    lastExport = exports.submit(() -> store == null
+                            ? export(exporter, renderFullResolution(original, edits), target)
+                            : exportTiled(exporter, store, edits, target));
+                    lastExport.whenComplete((size, error) -> {
+                        if (error != null) {
+                            Throwable cause = error.getCause() instanceof UncheckedIOException ? error.getCause().getCause() : error.getCause();
+                            SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(null, "Error: " + cause.getMessage(), "Error", JOptionPane.ERROR_MESSAGE));
+                        }
+                    });
+                } catch (IllegalStateException e) {
+                    JOptionPane.showMessageDialog(this, e.getMessage() + "; try again once an export has finished.", "Error", JOptionPane.ERROR_MESSAGE);
                 }
             }
         }
     }
 
+    private static long export(ImageExporter exporter, BufferedImage result, Path target) throws IOException {
+        FilterMetrics.Timer timer = FilterMetrics.startStage("encode", (long) result.getWidth() * result.getHeight());
+        long size = exporter.write(result, target);
+        timer.stop();
+        return size;
+    }
+
+    private static long exportTiled(ImageExporter exporter, TiledImageStore original, List<EditGraph.Edit> edits, Path target) throws IOException {
+        TiledImageStore result = renderFullResolutionTiled(original, edits);
+        try {
+            FilterMetrics.Timer timer = FilterMetrics.startStage("encode", result.pixelCount());
+            long size = exporter.write(result, target);
+            timer.stop();
+            return size;
+        } finally {
+            if (result != original) {
+                result.close();
+            }
+        }
+    }
+
     public void addPoint(int x, int y) {
         if (points.size() >= 4 || selectedImage == null) {
             return;
@@ -286,8 +448,19 @@ public class MainPanel extends JPanel {
         g.setColor(FILL_COLOR);
         g.fillRect(IMAGE_X, IMAGE_Y, IMAGE_WIDTH, IMAGE_HEIGHT);
 
-        if (filteredImage != null) {
-            g.drawImage(filteredImage, IMAGE_X, IMAGE_Y, IMAGE_WIDTH, IMAGE_HEIGHT, this);
+        BufferedImage partial = runningFilter == null ? null : runningFilter.partial;
+        Graphics2D clipped = (Graphics2D) g.create(IMAGE_X, IMAGE_Y, IMAGE_WIDTH, IMAGE_HEIGHT);
+        clipped.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        if (partial != null) {
+            drawPreview(clipped, partial);
+        } else if (filteredImage != null) {
+            drawPreview(clipped, filteredImage);
+            drawTiles(clipped);
+        }
+        clipped.dispose();
+
+        if (histogram != null) {
+            drawHistogram(g);
         }
 
         g.setColor(Color.RED.brighter());
@@ -295,4 +468,219 @@ public class MainPanel extends JPanel {
             g.fillOval(point.x, point.y, 20, 20);
         }
     }
-}
\ No newline at end of file
+
+    private void drawHistogram(Graphics g) {
+        long[] columns = new long[HISTOGRAM_AREA.width];
+        long highest = 1;
+        for (int level = 0; level < Histogram.LEVELS; level++) {
+            columns[level * columns.length / Histogram.LEVELS] += histogram.luminance(level);
+        }
+        for (long column : columns) {
+            highest = Math.max(highest, column);
+        }
+        g.setColor(FILL_COLOR);
+        g.fillRect(HISTOGRAM_AREA.x, HISTOGRAM_AREA.y, HISTOGRAM_AREA.width, HISTOGRAM_AREA.height);
+        g.setColor(Color.DARK_GRAY);
+        int bottom = HISTOGRAM_AREA.y + HISTOGRAM_AREA.height;
+        for (int x = 0; x < columns.length; x++) {
+            int height = (int) Math.round((double) columns[x] * HISTOGRAM_AREA.height / highest);
+            g.drawLine(HISTOGRAM_AREA.x + x, bottom, HISTOGRAM_AREA.x + x, bottom - height);
+        }
+        g.setColor(BORDER_COLOR);
+        g.drawRect(HISTOGRAM_AREA.x, HISTOGRAM_AREA.y, HISTOGRAM_AREA.width, HISTOGRAM_AREA.height);
+    }
+
+    private void drawPreview(Graphics g, BufferedImage image) {
+        int x = (int) Math.floor(viewLeft() * IMAGE_WIDTH * zoom), y = (int) Math.floor(viewTop() * IMAGE_HEIGHT * zoom);
+        g.drawImage(image, -x, -y, (int) Math.round(IMAGE_WIDTH * zoom) - x, (int) Math.round(IMAGE_HEIGHT * zoom) - y,
+                0, 0, image.getWidth(), image.getHeight(), this);
+    }
+
+    private void drawTiles(Graphics g) {
+        EditGraph.Level level = displayLevel();
+        double scaleX = IMAGE_WIDTH * zoom / level.width(), scaleY = IMAGE_HEIGHT * zoom / level.height();
+        double left = viewLeft() * level.width(), top = viewTop() * level.height();
+        int firstColumn = (int) (left / EditGraph.TILE_SIZE), lastColumn = (int) ((left + IMAGE_WIDTH / scaleX) / EditGraph.TILE_SIZE);
+        int firstRow = (int) (top / EditGraph.TILE_SIZE), lastRow = (int) ((top + IMAGE_HEIGHT / scaleY) / EditGraph.TILE_SIZE);
+        List<Point> missing = new ArrayList<>();
+        for (int row = firstRow; row <= Math.min(lastRow, level.rows() - 1); row++) {
+            for (int column = firstColumn; column <= Math.min(lastColumn, level.columns() - 1); column++) {
+                BufferedImage tile = level.cachedTile(column, row);
+                if (tile == null) {
+                    missing.add(new Point(column, row));
+                    continue;
+                }
+                Rectangle bounds = level.tileBounds(column, row);
+                int x1 = (int) Math.round((bounds.x - left) * scaleX), y1 = (int) Math.round((bounds.y - top) * scaleY);
+                int x2 = (int) Math.round((bounds.x + bounds.width - left) * scaleX), y2 = (int) Math.round((bounds.y + bounds.height - top) * scaleY);
+                g.drawImage(tile, x1, y1, x2, y2, 0, 0, bounds.width, bounds.height, this);
+            }
+        }
+        boolean evaluating = displayWorker != null && displayWorker.level == level && !displayWorker.isDone();
+        if (!missing.isEmpty() && !evaluating && level != failedLevel) {
+            if (displayWorker != null) {
+                displayWorker.cancel(false);
+            }
+            displayWorker = new DisplayWorker(level, missing);
+            displayWorker.execute();
+        }
+    }
+
+    private EditGraph.Level displayLevel() {
+        EditGraph.Level level = display.level(0);
+        for (int next = 1; level.width() > 1 && level.height() > 1; next++) {
+            EditGraph.Level smaller = display.level(next);
+            if (smaller.width() < IMAGE_WIDTH * zoom || smaller.height() < IMAGE_HEIGHT * zoom) {
+                break;
+            }
+            level = smaller;
+        }
+        return level;
+    }
+
+    private final class DisplayWorker extends SwingWorker<Void, Void> {
+
+        private final EditGraph.Level level;
+        private final List<Point> tiles;
+
+        DisplayWorker(EditGraph.Level level, List<Point> tiles) {
+            this.level = level;
+            this.tiles = tiles;
+        }
+
+        @Override
+        protected Void doInBackground() {
+            for (Point tile : tiles) {
+                if (isCancelled()) {
+                    break;
+                }
+                level.tile(tile.x, tile.y);
+                publish();
+            }
+            return null;
+        }
+
+        @Override
+        protected void process(List<Void> chunks) {
+            if (displayWorker == this) {
+                repaint(IMAGE_X, IMAGE_Y, IMAGE_WIDTH, IMAGE_HEIGHT);
+            }
+        }
+
+        @Override
+        protected void done() {
+            if (displayWorker != this || isCancelled()) {
+                return;
+            }
+            try {
+                get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                // The preview stays on display; this level is not evaluated again until the edits change.
+                failedLevel = level;
+                e.getCause().printStackTrace();
+            }
+            repaint(IMAGE_X, IMAGE_Y, IMAGE_WIDTH, IMAGE_HEIGHT);
+        }
+    }
+
+    private final class FilterWorker extends SwingWorker<BufferedImage, Rectangle> {
+
+        private final EditGraph.Edit edit;
+        private final BufferedImage source;
+        private final Histogram sourceHistogram;
+        private final FilterJob job = new FilterJob(this::bandCompleted);
+        private final AtomicBoolean started = new AtomicBoolean();
+        private volatile boolean stopped;
+        private volatile BufferedImage partial;
+
+        FilterWorker(EditGraph.Edit edit, BufferedImage source, Histogram sourceHistogram) {
+            this.edit = edit;
+            this.source = source;
+            this.sourceHistogram = sourceHistogram;
+            addPropertyChangeListener(e -> {
+                if (runningFilter == this && "progress".equals(e.getPropertyName())) {
+                    progressBar.setValue((Integer) e.getNewValue());
+                }
+            });
+        }
+
+        @Override
+        protected BufferedImage doInBackground() {
+            if (!started.compareAndSet(false, true)) {
+                return null;
+            }
+            try {
+                Region region = edit.region == null ? null : Region.of(edit.region);
+                FilterMetrics.Timer timer = FilterMetrics.startStage("preview", (long) source.getWidth() * source.getHeight());
+                BufferedImage result = job.run(() -> resultCache.apply(source, edit.step.cacheKey(), region, () -> edit.step.apply(source, region)));
+                timer.stop();
+                return result;
+            } finally {
+                stopped = true;
+            }
+        }
+
+        private void bandCompleted(BufferedImage partial, Rectangle band, double progress) {
+            this.partial = partial;
+            setProgress((int) (progress * 100));
+            publish(band);
+        }
+
+        @Override
+        protected void process(List<Rectangle> bands) {
+            if (runningFilter == this && partial != null) {
+                double scaleX = IMAGE_WIDTH * zoom / partial.getWidth(), scaleY = IMAGE_HEIGHT * zoom / partial.getHeight();
+                double left = viewLeft() * partial.getWidth(), top = viewTop() * partial.getHeight();
+                for (Rectangle band : bands) {
+                    repaint(IMAGE_X + (int) ((band.x - left) * scaleX), IMAGE_Y + (int) ((band.y - top) * scaleY),
+                            (int) Math.ceil(band.width * scaleX) + 1, (int) Math.ceil(band.height * scaleY) + 1);
+                }
+            }
+        }
+
+        @Override
+        protected void done() {
+            if (runningFilter != this) {
+                return;
+            }
+            runningFilter = null;
+            progressBar.setVisible(false);
+            try {
+                BufferedImage result = get();
+                history.commit(result, edit);
+                historyChanged(histogram(result));
+            } catch (CancellationException ignored) {
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                JOptionPane.showMessageDialog(null, "Error: " + e.getCause().getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+            }
+            repaint();
+        }
+
+        private Histogram histogram(BufferedImage result) {
+            if (edit.region == null || result.getWidth() != source.getWidth() || result.getHeight() != source.getHeight()) {
+                return Histogram.of(result);
+            }
+            Rectangle area = edit.region.intersection(new Rectangle(source.getWidth(), source.getHeight()));
+            return area.isEmpty() ? sourceHistogram : sourceHistogram.update(PackedRaster.of(source), PackedRaster.of(result), area);
+        }
+
+        void stop() {
+            job.cancel();
+            cancel(false);
+            if (started.compareAndSet(false, true)) {
+                stopped = true;
+            }
+        }
+
+        /**
+         * One stopped before it started never reads its source.
+         */
+        boolean hasStopped() {
+            return stopped;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+/**
+ * Called on the thread that did the work, possibly from several threads at once.
+ */
+interface MetricsSink {
+
+    /**
+     * @param filter         filter name, or the names of fused point filters joined by {@code '+'}
+     * @param allocatedBytes bytes allocated by the measuring thread and the pool workers filtering for it
+     */
+    void filterCompleted(String filter, int width, int height, long regionPixels, long nanos, long allocatedBytes);
+
+    /**
+     * @param pixels 0 when unknown
+     */
+    void stageCompleted(String stage, long pixels, long nanos, long allocatedBytes);
+}
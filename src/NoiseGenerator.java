@@ -0,0 +1,82 @@
+/**
+ * Seeded, counter-based noise: the noise of a pixel is a hash of the seed and its position, so any parallel or
+ * tiled run draws exactly the numbers of a sequential one.
+ */
+final class NoiseGenerator implements ImageFilterProcessor.PixelPositionTransformer {
+
+    enum Distribution {
+
+        UNIFORM,
+        /**
+         * Standard deviation {@code strength / 2}, from the sum of four uniform samples.
+         */
+        GAUSSIAN
+    }
+
+    static final NoiseGenerator DEFAULT = new NoiseGenerator(0, 25, Distribution.UNIFORM, true, 0, 0);
+
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+    private static final double IRWIN_HALL_MEAN = 2 * 65535.0;
+    private static final double IRWIN_HALL_DEVIATION = 65536 * Math.sqrt(4 / 12.0);
+
+    private final long seed;
+    private final int strength;
+    private final Distribution distribution;
+    private final boolean monochrome;
+    private final int originX;
+    private final int originY;
+
+    /**
+     * @param originX x of the position that counts as column 0, so a part of an image gets the noise of the whole
+     */
+    NoiseGenerator(long seed, int strength, Distribution distribution, boolean monochrome, int originX, int originY) {
+        if (strength < 0) {
+            throw new IllegalArgumentException("Noise strength must not be negative: " + strength);
+        }
+        this.seed = seed;
+        this.strength = strength;
+        this.distribution = distribution;
+        this.monochrome = monochrome;
+        this.originX = originX;
+        this.originY = originY;
+    }
+
+    @Override
+    public int apply(int argb, int x, int y) {
+        long counter = 4 * ((long) (y - originY) << 32 | ((x - originX) & 0xFFFFFFFFL));
+        int red, green, blue;
+        if (monochrome) {
+            int noise = sample(counter);
+            red = noise;
+            green = noise;
+            blue = noise;
+        } else {
+            red = sample(counter + 1);
+            green = sample(counter + 2);
+            blue = sample(counter + 3);
+        }
+        return argb & 0xFF000000
+                | clamp(((argb >> 16) & 0xFF) + red) << 16
+                | clamp(((argb >> 8) & 0xFF) + green) << 8
+                | clamp((argb & 0xFF) + blue);
+    }
+
+    private int sample(long counter) {
+        long bits = mix(seed + counter * GOLDEN_GAMMA);
+        if (distribution == Distribution.UNIFORM) {
+            return (int) (((bits >>> 32) * (2L * strength + 1)) >>> 32) - strength;
+        }
+        long sum = (bits & 0xFFFF) + ((bits >>> 16) & 0xFFFF) + ((bits >>> 32) & 0xFFFF) + (bits >>> 48);
+        return (int) Math.round((sum - IRWIN_HALL_MEAN) / IRWIN_HALL_DEVIATION * strength / 2);
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : Math.min(255, value);
+    }
+}
@@ -0,0 +1,351 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.MultiPixelPackedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+
+/**
+ * Packed ARGB view of a {@link BufferedImage}. Packed int images share their own pixel array; other types are
+ * unpacked into one. Gray samples are taken as stored, not through the linear gray color space of {@code getRGB}.
+ */
+final class PackedRaster {
+
+    final int width;
+    final int height;
+    final int[] pixels;
+
+    private final BufferedImage image;
+    private final boolean shared;
+
+    private PackedRaster(BufferedImage image, int[] pixels, boolean shared) {
+        this.width = image.getWidth();
+        this.height = image.getHeight();
+        this.image = image;
+        this.pixels = pixels;
+        this.shared = shared;
+    }
+
+    static PackedRaster of(BufferedImage image) {
+        int[] direct = directInts(image);
+        if (direct != null) {
+            return new PackedRaster(image, direct, true);
+        }
+        int[] pixels = new int[image.getWidth() * image.getHeight()];
+        readRows(image, 0, image.getHeight(), pixels);
+        return new PackedRaster(image, pixels, false);
+    }
+
+    static boolean isDirect(BufferedImage image) {
+        return directInts(image) != null;
+    }
+
+    static void readRows(BufferedImage image, int startY, int endY, int[] pixels) {
+        int width = image.getWidth();
+        int[] direct = directInts(image);
+        if (direct != null) {
+            System.arraycopy(direct, startY * width, pixels, 0, (endY - startY) * width);
+        } else if (!unpackBytes(image, startY, endY, pixels)) {
+            image.getRGB(0, startY, width, endY - startY, pixels, 0, width);
+        }
+    }
+
+    static void writeRows(BufferedImage image, int startY, int endY, int[] pixels) {
+        int width = image.getWidth();
+        int[] direct = directInts(image);
+        if (direct != null) {
+            System.arraycopy(pixels, 0, direct, startY * width, (endY - startY) * width);
+        } else if (!packBytes(image, startY, endY, pixels)) {
+            image.setRGB(0, startY, width, endY - startY, pixels, 0, width);
+        }
+    }
+
+    PackedRaster createCompatible() {
+        return createCompatible(width, height);
+    }
+
+    /**
+     * A packed int type for custom image types.
+     */
+    PackedRaster createCompatible(int width, int height) {
+        return createCompatible(width, height, format());
+    }
+
+    PackedRaster createCompatible(int width, int height, RasterFormat format) {
+        BufferedImage target = new BufferedImage(width, height, format.imageType(image));
+        int[] direct = directInts(target);
+        return direct != null
+                ? new PackedRaster(target, direct, true)
+                : new PackedRaster(target, new int[width * height], false);
+    }
+
+    PackedRaster copy() {
+        return copy(format());
+    }
+
+    PackedRaster copy(RasterFormat format) {
+        PackedRaster copy = createCompatible(width, height, format);
+        System.arraycopy(pixels, 0, copy.pixels, 0, pixels.length);
+        return copy;
+    }
+
+    RasterFormat format() {
+        return RasterFormat.of(image);
+    }
+
+    boolean hasAlpha() {
+        return image.getColorModel().hasAlpha();
+    }
+
+    /**
+     * The backing array itself when the area is the whole image.
+     */
+    int[] read(Rectangle area) {
+        if (area.x == 0 && area.y == 0 && area.width == width && area.height == height) {
+            return pixels;
+        }
+        int[] region = new int[area.width * area.height];
+        for (int y = 0; y < area.height; y++) {
+            System.arraycopy(pixels, (area.y + y) * width + area.x, region, y * area.width, area.width);
+        }
+        return region;
+    }
+
+    /**
+     * {@code null} when the pixels are only packed in by {@link #toImage()}.
+     */
+    BufferedImage sharedImage() {
+        return shared ? image : null;
+    }
+
+    BufferedImage toImage() {
+        if (!shared) {
+            writeRows(image, 0, height, pixels);
+        }
+        return image;
+    }
+
+    static BufferedImage wrap(int[] pixels, int width, int height, boolean alpha) {
+        DirectColorModel model = alpha
+                ? new DirectColorModel(32, 0xFF0000, 0xFF00, 0xFF, 0xFF000000)
+                : new DirectColorModel(24, 0xFF0000, 0xFF00, 0xFF);
+        WritableRaster raster = Raster.createPackedRaster(new DataBufferInt(pixels, width * height), width, height, width,
+                model.getMasks(), null);
+        return new BufferedImage(model, raster, false, null);
+    }
+
+    static BufferedImage toSupportedType(BufferedImage image) {
+        return isSupported(image) ? image
+                : convert(image, image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+    }
+
+    private static boolean isSupported(BufferedImage image) {
+        switch (image.getType()) {
+            case BufferedImage.TYPE_INT_RGB:
+            case BufferedImage.TYPE_INT_ARGB:
+            case BufferedImage.TYPE_3BYTE_BGR:
+            case BufferedImage.TYPE_4BYTE_ABGR:
+            case BufferedImage.TYPE_BYTE_GRAY:
+                return true;
+            case BufferedImage.TYPE_BYTE_BINARY:
+                return RasterFormat.isBlackAndWhite(image);
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Types without alpha unpacked here are copied pixel for pixel; others are drawn, flattening alpha onto black.
+     */
+    static BufferedImage convert(BufferedImage image, int type) {
+        BufferedImage converted = new BufferedImage(image.getWidth(), image.getHeight(), type);
+        if (!image.getColorModel().hasAlpha() && isSupported(image)) {
+            PackedRaster target = of(converted);
+            System.arraycopy(of(image).pixels, 0, target.pixels, 0, target.pixels.length);
+            return target.toImage();
+        }
+        Graphics2D g2d = converted.createGraphics();
+        g2d.drawImage(image, 0, 0, null);
+        g2d.dispose();
+        return converted;
+    }
+
+    static int[] directInts(BufferedImage image) {
+        int type = image.getType();
+        if (type != BufferedImage.TYPE_INT_RGB && type != BufferedImage.TYPE_INT_ARGB) {
+            return null;
+        }
+        Raster raster = image.getRaster();
+        if (!(raster.getDataBuffer() instanceof DataBufferInt)
+                || !(raster.getSampleModel() instanceof SinglePixelPackedSampleModel)
+                || !isUntranslated(raster)) {
+            return null;
+        }
+        SinglePixelPackedSampleModel model = (SinglePixelPackedSampleModel) raster.getSampleModel();
+        if (model.getScanlineStride() != image.getWidth()) {
+            return null;
+        }
+        return ((DataBufferInt) raster.getDataBuffer()).getData();
+    }
+
+    static byte[] directBytes(BufferedImage image, int bands) {
+        Raster raster = image.getRaster();
+        if (!(raster.getDataBuffer() instanceof DataBufferByte)
+                || !(raster.getSampleModel() instanceof ComponentSampleModel)
+                || !isUntranslated(raster)) {
+            return null;
+        }
+        ComponentSampleModel model = (ComponentSampleModel) raster.getSampleModel();
+        if (model.getPixelStride() != bands || model.getScanlineStride() != image.getWidth() * bands) {
+            return null;
+        }
+        return ((DataBufferByte) raster.getDataBuffer()).getData();
+    }
+
+    /**
+     * {@code null} unless rows start on a byte.
+     */
+    static byte[] directBits(BufferedImage image) {
+        Raster raster = image.getRaster();
+        if (!(raster.getDataBuffer() instanceof DataBufferByte)
+                || !(raster.getSampleModel() instanceof MultiPixelPackedSampleModel)
+                || !isUntranslated(raster)) {
+            return null;
+        }
+        MultiPixelPackedSampleModel model = (MultiPixelPackedSampleModel) raster.getSampleModel();
+        if (model.getPixelBitStride() != 1 || model.getDataBitOffset() != 0 || model.getScanlineStride() != (image.getWidth() + 7) / 8) {
+            return null;
+        }
+        return ((DataBufferByte) raster.getDataBuffer()).getData();
+    }
+
+    private static boolean isUntranslated(Raster raster) {
+        return raster.getSampleModelTranslateX() == 0 && raster.getSampleModelTranslateY() == 0
+                && raster.getDataBuffer().getOffset() == 0 && raster.getDataBuffer().getNumBanks() == 1;
+    }
+
+    private static boolean unpackBytes(BufferedImage image, int startY, int endY, int[] pixels) {
+        RasterFormat format = RasterFormat.of(image);
+        if (format != RasterFormat.COLOR) {
+            unpackGray(image, format, startY, endY, pixels);
+            return true;
+        }
+        int count = (endY - startY) * image.getWidth();
+        if (image.getType() == BufferedImage.TYPE_3BYTE_BGR) {
+            byte[] data = directBytes(image, 3);
+            if (data == null) {
+                return false;
+            }
+            for (int i = 0, j = 3 * startY * image.getWidth(); i < count; i++, j += 3) {
+                pixels[i] = 0xFF000000 | (data[j + 2] & 0xFF) << 16 | (data[j + 1] & 0xFF) << 8 | (data[j] & 0xFF);
+            }
+            return true;
+        }
+        if (image.getType() == BufferedImage.TYPE_4BYTE_ABGR) {
+            byte[] data = directBytes(image, 4);
+            if (data == null) {
+                return false;
+            }
+            for (int i = 0, j = 4 * startY * image.getWidth(); i < count; i++, j += 4) {
+                pixels[i] = (data[j] & 0xFF) << 24 | (data[j + 3] & 0xFF) << 16 | (data[j + 2] & 0xFF) << 8 | (data[j + 1] & 0xFF);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static void unpackGray(BufferedImage image, RasterFormat format, int startY, int endY, int[] pixels) {
+        int width = image.getWidth(), count = (endY - startY) * width;
+        byte[] data = format == RasterFormat.GRAY ? directBytes(image, 1) : directBits(image);
+        if (data == null) {
+            image.getRaster().getSamples(0, startY, width, endY - startY, 0, pixels);
+            for (int i = 0; i < count; i++) {
+                pixels[i] = 0xFF000000 | 0x010101 * (format == RasterFormat.GRAY ? pixels[i] : pixels[i] * 255);
+            }
+        } else if (format == RasterFormat.GRAY) {
+            for (int i = 0, j = startY * width; i < count; i++, j++) {
+                pixels[i] = 0xFF000000 | 0x010101 * (data[j] & 0xFF);
+            }
+        } else {
+            int stride = (width + 7) / 8;
+            for (int y = startY, i = 0; y < endY; y++) {
+                for (int x = 0; x < width; x++, i++) {
+                    pixels[i] = (data[y * stride + (x >> 3)] >> (7 - (x & 7)) & 1) == 0 ? 0xFF000000 : 0xFFFFFFFF;
+                }
+            }
+        }
+    }
+
+    /**
+     * Black and white stores whether the luma is at least half way to white.
+     */
+    private static void packGray(BufferedImage image, RasterFormat format, int startY, int endY, int[] pixels) {
+        int width = image.getWidth(), count = (endY - startY) * width;
+        byte[] data = format == RasterFormat.GRAY ? directBytes(image, 1) : directBits(image);
+        if (data == null) {
+            int[] samples = new int[count];
+            for (int i = 0; i < count; i++) {
+                int luma = ImageFilterProcessor.luma(pixels[i]);
+                samples[i] = format == RasterFormat.GRAY ? luma : luma >> 7;
+            }
+            image.getRaster().setSamples(0, startY, width, endY - startY, 0, samples);
+        } else if (format == RasterFormat.GRAY) {
+            for (int i = 0, j = startY * width; i < count; i++, j++) {
+                data[j] = (byte) ImageFilterProcessor.luma(pixels[i]);
+            }
+        } else {
+            int stride = (width + 7) / 8;
+            for (int y = startY; y < endY; y++) {
+                int row = (y - startY) * width;
+                for (int column = 0; column < stride; column++) {
+                    int bits = 0;
+                    for (int x = column * 8; x < Math.min(width, column * 8 + 8); x++) {
+                        bits |= (ImageFilterProcessor.luma(pixels[row + x]) >> 7) << (7 - (x & 7));
+                    }
+                    data[y * stride + column] = (byte) bits;
+                }
+            }
+        }
+    }
+
+    private static boolean packBytes(BufferedImage image, int startY, int endY, int[] pixels) {
+        RasterFormat format = RasterFormat.of(image);
+        if (format != RasterFormat.COLOR) {
+            packGray(image, format, startY, endY, pixels);
+            return true;
+        }
+        int count = (endY - startY) * image.getWidth();
+        if (image.getType() == BufferedImage.TYPE_3BYTE_BGR) {
+            byte[] data = directBytes(image, 3);
+            if (data == null) {
+                return false;
+            }
+            for (int i = 0, j = 3 * startY * image.getWidth(); i < count; i++, j += 3) {
+                int argb = pixels[i];
+                data[j] = (byte) argb;
+                data[j + 1] = (byte) (argb >> 8);
+                data[j + 2] = (byte) (argb >> 16);
+            }
+            return true;
+        }
+        if (image.getType() == BufferedImage.TYPE_4BYTE_ABGR) {
+            byte[] data = directBytes(image, 4);
+            if (data == null) {
+                return false;
+            }
+            for (int i = 0, j = 4 * startY * image.getWidth(); i < count; i++, j += 4) {
+                int argb = pixels[i];
+                data[j] = (byte) (argb >> 24);
+                data[j + 1] = (byte) argb;
+                data[j + 2] = (byte) (argb >> 8);
+                data[j + 3] = (byte) (argb >> 16);
+            }
+            return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,78 @@
+import java.awt.image.BufferedImage;
+
+/**
+ * Where the pixels of an image live in its own data array, so runs of a row can be copied without unpacking.
+ * Runs of black and white images must start at a multiple of 8 pixels.
+ */
+final class PixelLayout {
+
+    final Object data;
+    final int stride;
+    private final int pixelBits;
+    private final int elementBits;
+
+    private PixelLayout(Object data, int stride, int pixelBits, int elementBits) {
+        this.data = data;
+        this.stride = stride;
+        this.pixelBits = pixelBits;
+        this.elementBits = elementBits;
+    }
+
+    /**
+     * {@code null} for types {@link PackedRaster#toSupportedType} does not keep.
+     */
+    static PixelLayout of(BufferedImage image) {
+        int width = image.getWidth();
+        int[] ints = PackedRaster.directInts(image);
+        if (ints != null) {
+            return new PixelLayout(ints, width, 32, 32);
+        }
+        switch (RasterFormat.of(image)) {
+            case BINARY: {
+                byte[] bits = PackedRaster.directBits(image);
+                return bits == null ? null : new PixelLayout(bits, (width + 7) / 8, 1, 8);
+            }
+            case GRAY: {
+                byte[] bytes = PackedRaster.directBytes(image, 1);
+                return bytes == null ? null : new PixelLayout(bytes, width, 8, 8);
+            }
+            default: {
+                int bands = image.getType() == BufferedImage.TYPE_3BYTE_BGR ? 3
+                        : image.getType() == BufferedImage.TYPE_4BYTE_ABGR ? 4 : 0;
+                byte[] bytes = bands == 0 ? null : PackedRaster.directBytes(image, bands);
+                return bytes == null ? null : new PixelLayout(bytes, width * bands, 8 * bands, 8);
+            }
+        }
+    }
+
+    static BufferedImage copy(BufferedImage image) {
+        PixelLayout layout = of(image);
+        if (layout == null) {
+            throw new IllegalArgumentException("Unsupported image type: " + image.getType());
+        }
+        BufferedImage copy = new BufferedImage(image.getWidth(), image.getHeight(), image.getType());
+        Object data = of(copy).data;
+        System.arraycopy(layout.data, 0, data, 0, length(data));
+        return copy;
+    }
+
+    int offset(int x, int y) {
+        return y * stride + (int) ((long) x * pixelBits / elementBits);
+    }
+
+    int length(int width) {
+        return (int) (((long) width * pixelBits + elementBits - 1) / elementBits);
+    }
+
+    Object allocate(int length) {
+        return data instanceof int[] ? new int[length] : new byte[length];
+    }
+
+    static int length(Object data) {
+        return data instanceof int[] ? ((int[]) data).length : ((byte[]) data).length;
+    }
+
+    static long bytes(Object data) {
+        return data instanceof int[] ? 4L * ((int[]) data).length : ((byte[]) data).length;
+    }
+}
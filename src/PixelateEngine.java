@@ -0,0 +1,81 @@
+import java.util.Arrays;
+
+/**
+ * Each block row is reduced in one sweep into per-block sums, so the cost does not depend on the block size.
+ */
+final class PixelateEngine {
+
+    private PixelateEngine() {
+    }
+
+    /**
+     * Blocks cut by the image border average only their visible pixels.
+     */
+    static int[] pixelate(int[] pixels, int width, int height, int blockSize, int offsetX, int offsetY) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("Block size must be positive: " + blockSize);
+        }
+        int[] columnBlocks = blockIndices(width, blockSize, offsetX);
+        int[] rowStarts = blockStarts(height, blockSize, offsetY);
+        int blocksAcross = columnBlocks[width - 1] + 1;
+        int blockRows = rowStarts.length - 1;
+        int[] result = new int[width * height];
+
+        TileExecutor.forEachBand(width * blockSize, blockRows, (firstBlockRow, endBlockRow) -> {
+            long[] red = new long[blocksAcross], green = new long[blocksAcross], blue = new long[blocksAcross];
+            int[] count = new int[blocksAcross];
+            int[] average = new int[blocksAcross];
+            for (int blockRow = firstBlockRow; blockRow < endBlockRow; blockRow++) {
+                int startY = rowStarts[blockRow], endY = rowStarts[blockRow + 1];
+                Arrays.fill(red, 0);
+                Arrays.fill(green, 0);
+                Arrays.fill(blue, 0);
+                Arrays.fill(count, 0);
+                for (int y = startY; y < endY; y++) {
+                    int row = y * width;
+                    for (int x = 0; x < width; x++) {
+                        int argb = pixels[row + x];
+                        int block = columnBlocks[x];
+                        red[block] += (argb >> 16) & 0xFF;
+                        green[block] += (argb >> 8) & 0xFF;
+                        blue[block] += argb & 0xFF;
+                        count[block]++;
+                    }
+                }
+                for (int block = 0; block < blocksAcross; block++) {
+                    average[block] = ImageFilterProcessor.rgb(
+                            (int) (red[block] / count[block]),
+                            (int) (green[block] / count[block]),
+                            (int) (blue[block] / count[block]));
+                }
+                for (int y = startY; y < endY; y++) {
+                    int row = y * width;
+                    for (int x = 0; x < width; x++) {
+                        result[row + x] = average[columnBlocks[x]];
+                    }
+                }
+            }
+        });
+        return result;
+    }
+
+    private static int[] blockIndices(int length, int blockSize, int offset) {
+        int shift = Math.floorMod(offset, blockSize);
+        int first = Math.floorDiv(-shift, blockSize);
+        int[] indices = new int[length];
+        for (int i = 0; i < length; i++) {
+            indices[i] = Math.floorDiv(i - shift, blockSize) - first;
+        }
+        return indices;
+    }
+
+    private static int[] blockStarts(int length, int blockSize, int offset) {
+        int[] indices = blockIndices(length, blockSize, offset);
+        int[] starts = new int[indices[length - 1] + 2];
+        for (int i = length - 1; i >= 0; i--) {
+            starts[indices[i]] = i;
+        }
+        starts[starts.length - 1] = length;
+        return starts;
+    }
+}
@@ -0,0 +1,261 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * PNG encoder that filters and deflates bands of scanlines in parallel. Each band is primed with the last 32 KiB
+ * of the one before and ends on a sync flush, so the bands concatenate into one zlib stream. Bands have a fixed
+ * size, so the file does not depend on the number of threads.
+ */
+final class PngEncoder {
+
+    private static final byte[] SIGNATURE = { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n' };
+    private static final int BAND_BYTES = 256 * 1024;
+    private static final int WINDOW = 32 * 1024;
+    private static final int ADLER_BASE = 65521;
+
+    private final int level;
+
+    /**
+     * @param level deflate level, 0 (store) to 9 (smallest)
+     */
+    PngEncoder(int level) {
+        if (level < 0 || level > 9) {
+            throw new IllegalArgumentException("PNG compression level must be 0 to 9: " + level);
+        }
+        this.level = level;
+    }
+
+    void write(BufferedImage image, OutputStream out) throws IOException {
+        PackedRaster raster = PackedRaster.of(image);
+        write(raster.width, raster.height, image.getColorModel().hasAlpha(),
+                (y, count) -> raster.read(new Rectangle(0, y, raster.width, count)), out);
+    }
+
+    void write(TiledImageStore store, OutputStream out) throws IOException {
+        write(store.width, store.height, store.alpha, (y, count) -> store.read(new Rectangle(0, y, store.width, count)), out);
+    }
+
+    private void write(int width, int height, boolean alpha, RowReader rows, OutputStream out) throws IOException {
+        int bytesPerPixel = alpha ? 4 : 3;
+        int bandRows = Math.max(1, BAND_BYTES / (width * bytesPerPixel + 1));
+        int bands = (height + bandRows - 1) / bandRows;
+        int group = 2 * TileExecutor.getParallelism();
+
+        DataOutputStream data = new DataOutputStream(out);
+        data.write(SIGNATURE);
+        writeChunk(data, "IHDR", header(width, height, alpha));
+        byte[] dictionary = null;
+        long adler = 1;
+        for (int first = 0; first < bands; first += group) {
+            int count = Math.min(group, bands - first), start = first;
+            byte[][] filtered = new byte[count][];
+            byte[][] compressed = new byte[count][];
+            long[] checksums = new long[count];
+            byte[] previous = dictionary;
+            try {
+                TileExecutor.forEachIndex(count, i -> {
+                    int startY = (start + i) * bandRows;
+                    filtered[i] = filter(rows, width, alpha, startY, Math.min(height, startY + bandRows));
+                });
+                TileExecutor.forEachIndex(count, i -> {
+                    compressed[i] = deflate(filtered[i], i == 0 ? previous : filtered[i - 1], start + i == bands - 1);
+                    Adler32 checksum = new Adler32();
+                    checksum.update(filtered[i]);
+                    checksums[i] = checksum.getValue();
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            for (int i = 0; i < count; i++) {
+                adler = combine(adler, checksums[i], filtered[i].length);
+                byte[] zlibHeader = start + i == 0 ? zlibHeader() : new byte[0];
+                byte[] trailer = start + i == bands - 1 ? intBytes((int) adler) : new byte[0];
+                writeChunk(data, "IDAT", zlibHeader, compressed[i], trailer);
+            }
+            dictionary = filtered[count - 1];
+        }
+        writeChunk(data, "IEND");
+        data.flush();
+    }
+
+    private static byte[] header(int width, int height, boolean alpha) {
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        header.writeBytes(intBytes(width));
+        header.writeBytes(intBytes(height));
+        header.write(8);
+        header.write(alpha ? 6 : 2);
+        header.write(0);
+        header.write(0);
+        header.write(0);
+        return header.toByteArray();
+    }
+
+    private byte[] zlibHeader() {
+        int compressionInfo = 0x78;
+        int flags = (level < 2 ? 0 : level < 6 ? 1 : level == 6 ? 2 : 3) << 6;
+        flags += 31 - (compressionInfo * 256 + flags) % 31;
+        return new byte[] { (byte) compressionInfo, (byte) flags };
+    }
+
+    private byte[] filter(RowReader rows, int width, boolean alpha, int startY, int endY) {
+        int bytesPerPixel = alpha ? 4 : 3, stride = width * bytesPerPixel;
+        int firstRow = Math.max(0, startY - 1);
+        int[] pixels;
+        try {
+            pixels = rows.read(firstRow, endY - firstRow);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        byte[] previous = new byte[stride], current = new byte[stride];
+        if (startY > 0) {
+            toBytes(pixels, 0, width, alpha, previous);
+        }
+        byte[][] candidates = level == 0 ? null : new byte[5][stride];
+        byte[] filtered = new byte[(endY - startY) * (stride + 1)];
+        for (int y = startY; y < endY; y++) {
+            toBytes(pixels, (y - firstRow) * width, width, alpha, current);
+            int offset = (y - startY) * (stride + 1);
+            int type = level == 0 ? 0 : chooseFilter(current, previous, bytesPerPixel, candidates);
+            filtered[offset] = (byte) type;
+            System.arraycopy(type == 0 ? current : candidates[type], 0, filtered, offset + 1, stride);
+            byte[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return filtered;
+    }
+
+    private static void toBytes(int[] pixels, int offset, int width, boolean alpha, byte[] row) {
+        int i = 0;
+        for (int x = offset; x < offset + width; x++) {
+            int argb = pixels[x];
+            row[i++] = (byte) (argb >> 16);
+            row[i++] = (byte) (argb >> 8);
+            row[i++] = (byte) argb;
+            if (alpha) {
+                row[i++] = (byte) (argb >>> 24);
+            }
+        }
+    }
+
+    private static int chooseFilter(byte[] row, byte[] above, int bytesPerPixel, byte[][] candidates) {
+        long[] sums = new long[5];
+        for (int i = 0; i < row.length; i++) {
+            int x = row[i] & 0xFF, b = above[i] & 0xFF;
+            int a = i < bytesPerPixel ? 0 : row[i - bytesPerPixel] & 0xFF;
+            int c = i < bytesPerPixel ? 0 : above[i - bytesPerPixel] & 0xFF;
+            byte sub = (byte) (x - a), up = (byte) (x - b), average = (byte) (x - ((a + b) >>> 1)), paeth = (byte) (x - paeth(a, b, c));
+            candidates[1][i] = sub;
+            candidates[2][i] = up;
+            candidates[3][i] = average;
+            candidates[4][i] = paeth;
+            sums[0] += Math.abs(row[i]);
+            sums[1] += Math.abs(sub);
+            sums[2] += Math.abs(up);
+            sums[3] += Math.abs(average);
+            sums[4] += Math.abs(paeth);
+        }
+        int best = 0;
+        for (int type = 1; type < sums.length; type++) {
+            if (sums[type] < sums[best]) {
+                best = type;
+            }
+        }
+        return best;
+    }
+
+    private static int paeth(int a, int b, int c) {
+        int p = a + b - c, pa = Math.abs(p - a), pb = Math.abs(p - b), pc = Math.abs(p - c);
+        return pa <= pb && pa <= pc ? a : pb <= pc ? b : c;
+    }
+
+    /**
+     * Every band but the last ends on a sync flush, at a byte boundary, so the next band continues the same stream.
+     */
+    private byte[] deflate(byte[] band, byte[] dictionary, boolean last) {
+        Deflater deflater = new Deflater(level, true);
+        try {
+            if (dictionary != null) {
+                int length = Math.min(WINDOW, dictionary.length);
+                deflater.setDictionary(dictionary, dictionary.length - length, length);
+            }
+            deflater.setInput(band);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(band.length / 2 + 64);
+            byte[] buffer = new byte[64 * 1024];
+            if (last) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    out.write(buffer, 0, deflater.deflate(buffer));
+                }
+            } else {
+                int length;
+                do {
+                    length = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                    out.write(buffer, 0, length);
+                } while (length == buffer.length);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * zlib's {@code adler32_combine}.
+     */
+    private static long combine(long first, long second, long secondLength) {
+        long remainder = secondLength % ADLER_BASE;
+        long sum1 = first & 0xFFFF;
+        long sum2 = remainder * sum1 % ADLER_BASE;
+        sum1 += (second & 0xFFFF) + ADLER_BASE - 1;
+        sum2 += (first >>> 16 & 0xFFFF) + (second >>> 16 & 0xFFFF) + ADLER_BASE - remainder;
+        if (sum1 >= ADLER_BASE) {
+            sum1 -= ADLER_BASE;
+        }
+        if (sum1 >= ADLER_BASE) {
+            sum1 -= ADLER_BASE;
+        }
+        if (sum2 >= 2L * ADLER_BASE) {
+            sum2 -= 2L * ADLER_BASE;
+        }
+        if (sum2 >= ADLER_BASE) {
+            sum2 -= ADLER_BASE;
+        }
+        return sum1 | sum2 << 16;
+    }
+
+    private static void writeChunk(DataOutputStream out, String type, byte[]... parts) throws IOException {
+        byte[] name = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(name);
+        int length = 0;
+        for (byte[] part : parts) {
+            crc.update(part);
+            length += part.length;
+        }
+        out.writeInt(length);
+        out.write(name);
+        for (byte[] part : parts) {
+            out.write(part);
+        }
+        out.writeInt((int) crc.getValue());
+    }
+
+    private static byte[] intBytes(int value) {
+        return new byte[] { (byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value };
+    }
+
+    @FunctionalInterface
+    private interface RowReader {
+        int[] read(int y, int count) throws IOException;
+    }
+}
@@ -0,0 +1,129 @@
+import java.awt.*;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Row kernels for the grayscale, threshold, sepia and tint filters. With {@code --add-modules jdk.incubator.vector}
+ * the vector kernels are used, unless {@code -Dphotomaster.vector=false}; they are checked against the scalar filters
+ * on a sample when they load, and exhaustively by {@code test/PointKernelsTest}.
+ */
+final class PointKernels {
+
+    @FunctionalInterface
+    interface RowKernel {
+        void apply(int[] source, int[] target, int from, int to);
+    }
+
+    /**
+     * Each kernel must give exactly the result of the scalar filter.
+     */
+    interface Backend {
+        String describe();
+
+        void grayscale(int[] source, int[] target, int from, int to);
+
+        void threshold(int[] source, int[] target, int from, int to);
+
+        void sepia(int[] source, int[] target, int from, int to);
+
+        void tint(int[] source, int[] target, int from, int to, Color tint);
+    }
+
+    private static final String VECTOR_BACKEND = System.getProperty("photomaster.pointKernels", "VectorPointKernels");
+    private static final int PROBE_PIXELS = 4099;
+    private static final Backend BACKEND = load();
+
+    private PointKernels() {
+    }
+
+    static String describe() {
+        return BACKEND == null ? "scalar" : BACKEND.describe();
+    }
+
+    static ImageFilterProcessor.PixelTransformer grayscale(ImageFilterProcessor.PixelTransformer scalar) {
+        return BACKEND == null ? scalar : withRowKernel(scalar, BACKEND::grayscale);
+    }
+
+    static ImageFilterProcessor.PixelTransformer threshold(ImageFilterProcessor.PixelTransformer scalar) {
+        return BACKEND == null ? scalar : withRowKernel(scalar, BACKEND::threshold);
+    }
+
+    static ImageFilterProcessor.PixelTransformer sepia(ImageFilterProcessor.PixelTransformer scalar) {
+        return BACKEND == null ? scalar : withRowKernel(scalar, BACKEND::sepia);
+    }
+
+    static ChannelLut tint(ChannelLut scalar, Color tint) {
+        return BACKEND == null ? scalar : scalar.withRowKernel((source, target, from, to) -> BACKEND.tint(source, target, from, to, tint));
+    }
+
+    private static ImageFilterProcessor.PixelTransformer withRowKernel(ImageFilterProcessor.PixelTransformer scalar, RowKernel rowKernel) {
+        return new ImageFilterProcessor.PixelTransformer() {
+            @Override
+            public int apply(int argb) {
+                return scalar.apply(argb);
+            }
+
+            @Override
+            public void applyRow(int[] source, int[] target, int from, int to) {
+                rowKernel.apply(source, target, from, to);
+            }
+        };
+    }
+
+    private static Backend load() {
+        if (!Boolean.parseBoolean(System.getProperty("photomaster.vector", "true"))) {
+            return null;
+        }
+        Backend backend;
+        try {
+            backend = (Backend) Class.forName(VECTOR_BACKEND).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+        return matchesScalar(backend) ? backend : null;
+    }
+
+    private static boolean matchesScalar(Backend backend) {
+        int[] probe = probe();
+        Color[] tints = { Color.BLACK, Color.WHITE, new Color(255, 200, 200), new Color(17, 128, 254) };
+        boolean matches = matches(probe, ImageFilterProcessor::grayscale, backend::grayscale)
+                && matches(probe, ImageFilterProcessor::threshold, backend::threshold)
+                && matches(probe, ImageFilterProcessor::sepia, backend::sepia);
+        for (Color tint : tints) {
+            matches &= matches(probe, ImageFilterProcessor.tintLut(tint), (source, target, from, to) -> backend.tint(source, target, from, to, tint));
+        }
+        return matches;
+    }
+
+    /**
+     * Unaligned, written both to another array and over its input.
+     */
+    private static boolean matches(int[] probe, ImageFilterProcessor.PixelTransformer scalar, RowKernel kernel) {
+        int from = 3;
+        int[] expected = probe.clone();
+        for (int i = from; i < probe.length; i++) {
+            expected[i] = scalar.apply(probe[i] | 0xFF000000);
+        }
+        int[] copied = probe.clone();
+        kernel.apply(probe, copied, from, probe.length);
+        int[] inPlace = probe.clone();
+        kernel.apply(inPlace, inPlace, from, probe.length);
+        return Arrays.equals(expected, copied) && Arrays.equals(expected, inPlace);
+    }
+
+    private static int[] probe() {
+        int[] probe = new int[PROBE_PIXELS];
+        SplittableRandom random = new SplittableRandom(PROBE_PIXELS);
+        for (int i = 0; i < probe.length; i++) {
+            int level = i & 0xFF;
+            switch (i >> 8) {
+                case 0: probe[i] = 0xFF000000 | level * 0x010101; break;
+                case 1: probe[i] = 0xFF000000 | level << 16; break;
+                case 2: probe[i] = 0xFF000000 | level << 8; break;
+                case 3: probe[i] = 0xFF000000 | level; break;
+                default: probe[i] = random.nextInt();
+            }
+        }
+        return probe;
+    }
+}
@@ -0,0 +1,57 @@
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+
+/**
+ * The narrowest kind of raster an image's pixels fit. Filter results are stored in the narrowest format their filter
+ * can produce; images with alpha keep a type with alpha.
+ */
+enum RasterFormat {
+
+    BINARY,
+    GRAY,
+    COLOR;
+
+    static RasterFormat of(BufferedImage image) {
+        switch (image.getType()) {
+            case BufferedImage.TYPE_BYTE_BINARY:
+                return isBlackAndWhite(image) ? BINARY : COLOR;
+            case BufferedImage.TYPE_BYTE_GRAY:
+                return GRAY;
+            default:
+                return COLOR;
+        }
+    }
+
+    /**
+     * Black at 0 and white at 1, one bit per pixel; other binary layouts are treated as color.
+     */
+    static boolean isBlackAndWhite(BufferedImage image) {
+        if (!(image.getColorModel() instanceof IndexColorModel) || image.getColorModel().getPixelSize() != 1) {
+            return false;
+        }
+        IndexColorModel palette = (IndexColorModel) image.getColorModel();
+        return palette.getMapSize() == 2 && (palette.getRGB(0) & 0xFFFFFF) == 0 && (palette.getRGB(1) & 0xFFFFFF) == 0xFFFFFF;
+    }
+
+    RasterFormat widen(RasterFormat other) {
+        return compareTo(other) >= 0 ? this : other;
+    }
+
+    /**
+     * The source's own type when it has this format, or alpha the narrow formats cannot carry.
+     */
+    int imageType(BufferedImage source) {
+        int type = source.getType();
+        if (source.getColorModel().hasAlpha()) {
+            return type == BufferedImage.TYPE_4BYTE_ABGR ? type : BufferedImage.TYPE_INT_ARGB;
+        }
+        switch (this) {
+            case BINARY:
+                return BufferedImage.TYPE_BYTE_BINARY;
+            case GRAY:
+                return BufferedImage.TYPE_BYTE_GRAY;
+            default:
+                return type == BufferedImage.TYPE_3BYTE_BGR ? type : BufferedImage.TYPE_INT_RGB;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+
+/**
+ * Immutable, so concurrent filter runs can share one.
+ */
+final class Region {
+
+    private final Rectangle bounds;
+    private final byte[] mask;
+    private final int maskStride;
+
+    private Region(Rectangle bounds, byte[] mask) {
+        this.bounds = bounds;
+        this.mask = mask;
+        this.maskStride = (bounds.width + 7) / 8;
+    }
+
+    static Region of(Rectangle rectangle) {
+        return new Region(new Rectangle(rectangle), null);
+    }
+
+    /**
+     * Covers the pixels whose centers lie inside {@code shape}.
+     */
+    static Region of(Shape shape) {
+        if (shape instanceof Rectangle) {
+            return of((Rectangle) shape);
+        }
+        Rectangle bounds = shape.getBounds();
+        return new Region(bounds, rasterize(shape, bounds));
+    }
+
+    Region translate(int dx, int dy) {
+        Rectangle moved = new Rectangle(bounds);
+        moved.translate(dx, dy);
+        return new Region(moved, mask);
+    }
+
+    Rectangle getBounds() {
+        return new Rectangle(bounds);
+    }
+
+    Rectangle clip(int width, int height) {
+        Rectangle clipped = bounds.intersection(new Rectangle(width, height));
+        return clipped.isEmpty() ? new Rectangle() : clipped;
+    }
+
+    boolean isRectangular() {
+        return mask == null;
+    }
+
+    boolean contains(int x, int y) {
+        if (!bounds.contains(x, y)) {
+            return false;
+        }
+        if (mask == null) {
+            return true;
+        }
+        int column = x - bounds.x;
+        return (mask[(y - bounds.y) * maskStride + column / 8] & (0x80 >> (column % 8))) != 0;
+    }
+
+    String cacheKey() {
+        return mask == null ? toString() : toString() + "#" + ResultCache.sha256(mask);
+    }
+
+    /**
+     * 1 bit per pixel, rows padded to whole bytes.
+     */
+    private static byte[] rasterize(Shape shape, Rectangle bounds) {
+        BufferedImage image = new BufferedImage(Math.max(1, bounds.width), Math.max(1, bounds.height), BufferedImage.TYPE_BYTE_BINARY);
+        Graphics2D g2d = image.createGraphics();
+        g2d.setColor(Color.WHITE);
+        g2d.translate(-bounds.x, -bounds.y);
+        g2d.fill(shape);
+        g2d.dispose();
+        return ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+    }
+
+    @Override
+    public String toString() {
+        return (mask == null ? "Region[" : "Region[mask ") + bounds.x + "," + bounds.y + " " + bounds.width + "x" + bounds.height + "]";
+    }
+}
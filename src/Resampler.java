@@ -0,0 +1,268 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Separable resampling on packed ARGB arrays with fixed-point weights computed once per output row and column.
+ * Colors of images with alpha are premultiplied for the passes, so transparent pixels do not bleed.
+ */
+final class Resampler {
+
+    private static final int WEIGHT_BITS = 14;
+    private static final int WEIGHT_ONE = 1 << WEIGHT_BITS;
+
+    private Resampler() {
+    }
+
+    enum Kernel {
+
+        /**
+         * Area average when shrinking, nearest neighbor when enlarging.
+         */
+        BOX(0.5) {
+            @Override
+            double weight(double x) {
+                return x > -0.5 && x <= 0.5 ? 1 : 0;
+            }
+        },
+        BILINEAR(1) {
+            @Override
+            double weight(double x) {
+                x = Math.abs(x);
+                return x < 1 ? 1 - x : 0;
+            }
+        },
+        BICUBIC(2) {
+            @Override
+            double weight(double x) {
+                double a = -0.5;
+                x = Math.abs(x);
+                if (x < 1) {
+                    return ((a + 2) * x - (a + 3)) * x * x + 1;
+                }
+                return x < 2 ? ((a * x - 5 * a) * x + 8 * a) * x - 4 * a : 0;
+            }
+        },
+        LANCZOS(3) {
+            @Override
+            double weight(double x) {
+                if (x == 0) {
+                    return 1;
+                }
+                if (Math.abs(x) >= 3) {
+                    return 0;
+                }
+                double px = Math.PI * x;
+                return 3 * Math.sin(px) * Math.sin(px / 3) / (px * px);
+            }
+        };
+
+        final double support;
+
+        Kernel(double support) {
+            this.support = support;
+        }
+
+        abstract double weight(double x);
+
+        static Kernel parse(String name) {
+            try {
+                return valueOf(name.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown resampling kernel: " + name);
+            }
+        }
+    }
+
+    /**
+     * Black and white images become gray, since filtering blends their edges.
+     */
+    static BufferedImage resize(BufferedImage image, int width, int height, Kernel kernel) {
+        BufferedImage supported = PackedRaster.toSupportedType(image);
+        PackedRaster source = PackedRaster.of(supported);
+        int[] pixels = resize(source.pixels, source.width, source.height, width, height, kernel, source.hasAlpha());
+        PackedRaster target = source.createCompatible(width, height, source.format().widen(RasterFormat.GRAY));
+        System.arraycopy(pixels, 0, target.pixels, 0, pixels.length);
+        return target.toImage();
+    }
+
+    static int[] resize(int[] pixels, int width, int height, int targetWidth, int targetHeight, Kernel kernel, boolean alpha) {
+        if (targetWidth < 1 || targetHeight < 1) {
+            throw new IllegalArgumentException("Invalid target size: " + targetWidth + "x" + targetHeight);
+        }
+        Weights columns = new Weights(width, targetWidth, kernel);
+        Weights rows = new Weights(height, targetHeight, kernel);
+        long horizontalFirst = (long) height * targetWidth * columns.taps + (long) targetHeight * targetWidth * rows.taps;
+        long verticalFirst = (long) targetHeight * width * rows.taps + (long) targetHeight * targetWidth * columns.taps;
+        boolean translucent = alpha && isTranslucent(pixels);
+        int[] source = translucent ? premultiply(pixels, width, height) : pixels;
+        int[] result = horizontalFirst <= verticalFirst
+                ? vertical(horizontal(source, width, height, columns), targetWidth, rows)
+                : horizontal(vertical(source, width, rows), width, targetHeight, columns);
+        if (translucent) {
+            unpremultiply(result, targetWidth, targetHeight);
+        }
+        return result;
+    }
+
+    private static boolean isTranslucent(int[] pixels) {
+        for (int argb : pixels) {
+            if (argb >>> 24 != 0xFF) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int[] premultiply(int[] pixels, int width, int height) {
+        int[] result = new int[pixels.length];
+        TileExecutor.forEachBand(width, height, (startY, endY) -> {
+            for (int i = startY * width; i < endY * width; i++) {
+                int argb = pixels[i], alpha = argb >>> 24;
+                result[i] = alpha << 24 | premultiply((argb >> 16) & 0xFF, alpha) << 16
+                        | premultiply((argb >> 8) & 0xFF, alpha) << 8 | premultiply(argb & 0xFF, alpha);
+            }
+        });
+        return result;
+    }
+
+    private static int premultiply(int value, int alpha) {
+        return (value * alpha + 127) / 255;
+    }
+
+    /**
+     * A filtered color above its alpha, from a kernel's negative lobes, is clamped.
+     */
+    private static void unpremultiply(int[] pixels, int width, int height) {
+        TileExecutor.forEachBand(width, height, (startY, endY) -> {
+            for (int i = startY * width; i < endY * width; i++) {
+                int argb = pixels[i], alpha = argb >>> 24;
+                pixels[i] = alpha == 0 ? 0 : alpha << 24 | unpremultiply((argb >> 16) & 0xFF, alpha) << 16
+                        | unpremultiply((argb >> 8) & 0xFF, alpha) << 8 | unpremultiply(argb & 0xFF, alpha);
+            }
+        });
+    }
+
+    private static int unpremultiply(int value, int alpha) {
+        return Math.min(255, (value * 255 + (alpha >> 1)) / alpha);
+    }
+
+    static Dimension fit(int width, int height, int maxWidth, int maxHeight) {
+        double scale = Math.min(maxWidth / (double) width, maxHeight / (double) height);
+        return new Dimension(Math.max(1, (int) Math.round(width * scale)), Math.max(1, (int) Math.round(height * scale)));
+    }
+
+    private static int[] horizontal(int[] pixels, int width, int height, Weights columns) {
+        int targetWidth = columns.start.length;
+        int[] result = new int[targetWidth * height];
+        TileExecutor.forEachBand(Math.max(width, targetWidth), height, (startY, endY) -> {
+            for (int y = startY; y < endY; y++) {
+                int row = y * width;
+                for (int x = 0; x < targetWidth; x++) {
+                    int alpha = 0, red = 0, green = 0, blue = 0;
+                    int first = row + columns.start[x], offset = x * columns.taps;
+                    for (int k = 0; k < columns.count[x]; k++) {
+                        int argb = pixels[first + k];
+                        int weight = columns.weights[offset + k];
+                        alpha += (argb >>> 24) * weight;
+                        red += ((argb >> 16) & 0xFF) * weight;
+                        green += ((argb >> 8) & 0xFF) * weight;
+                        blue += (argb & 0xFF) * weight;
+                    }
+                    result[y * targetWidth + x] = pack(alpha, red, green, blue);
+                }
+            }
+        });
+        return result;
+    }
+
+    private static int[] vertical(int[] pixels, int width, Weights rows) {
+        int targetHeight = rows.start.length;
+        int[] result = new int[width * targetHeight];
+        TileExecutor.forEachBand(width * rows.taps, targetHeight, (startY, endY) -> {
+            int[] alpha = new int[width], red = new int[width], green = new int[width], blue = new int[width];
+            for (int y = startY; y < endY; y++) {
+                Arrays.fill(alpha, 0);
+                Arrays.fill(red, 0);
+                Arrays.fill(green, 0);
+                Arrays.fill(blue, 0);
+                for (int k = 0; k < rows.count[y]; k++) {
+                    int row = (rows.start[y] + k) * width;
+                    int weight = rows.weights[y * rows.taps + k];
+                    for (int x = 0; x < width; x++) {
+                        int argb = pixels[row + x];
+                        alpha[x] += (argb >>> 24) * weight;
+                        red[x] += ((argb >> 16) & 0xFF) * weight;
+                        green[x] += ((argb >> 8) & 0xFF) * weight;
+                        blue[x] += (argb & 0xFF) * weight;
+                    }
+                }
+                int row = y * width;
+                for (int x = 0; x < width; x++) {
+                    result[row + x] = pack(alpha[x], red[x], green[x], blue[x]);
+                }
+            }
+        });
+        return result;
+    }
+
+    private static int pack(int alpha, int red, int green, int blue) {
+        return clamp(alpha) << 24 | clamp(red) << 16 | clamp(green) << 8 | clamp(blue);
+    }
+
+    private static int clamp(int sum) {
+        int value = (sum + (WEIGHT_ONE >> 1)) >> WEIGHT_BITS;
+        return value < 0 ? 0 : Math.min(255, value);
+    }
+
+    /**
+     * The weights of an index sum to one.
+     */
+    private static final class Weights {
+
+        final int[] start;
+        final int[] count;
+        final int[] weights;
+        final int taps;
+
+        Weights(int length, int targetLength, Kernel kernel) {
+            double scale = length / (double) targetLength;
+            double stretch = Math.max(1, scale);
+            double support = kernel.support * stretch;
+            taps = 2 * (int) Math.ceil(support) + 1;
+            start = new int[targetLength];
+            count = new int[targetLength];
+            weights = new int[targetLength * taps];
+
+            double[] exact = new double[taps];
+            for (int i = 0; i < targetLength; i++) {
+                double center = (i + 0.5) * scale;
+                int min = Math.max(0, (int) Math.floor(center - support + 0.5));
+                int max = Math.min(length, (int) Math.floor(center + support + 0.5));
+                double total = 0;
+                for (int k = 0; k < max - min; k++) {
+                    exact[k] = kernel.weight((min + k - center + 0.5) / stretch);
+                    total += exact[k];
+                }
+                if (total == 0) {
+                    min = Math.min(length - 1, (int) center);
+                    max = min + 1;
+                    exact[0] = total = 1;
+                }
+                int fixedTotal = 0, largest = 0;
+                for (int k = 0; k < max - min; k++) {
+                    int weight = (int) Math.round(exact[k] / total * WEIGHT_ONE);
+                    weights[i * taps + k] = weight;
+                    fixedTotal += weight;
+                    if (weight > weights[i * taps + largest]) {
+                        largest = k;
+                    }
+                }
+                weights[i * taps + largest] += WEIGHT_ONE - fixedTotal;
+                start[i] = min;
+                count[i] = max - min;
+            }
+        }
+    }
+}
@@ -0,0 +1,318 @@
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Cache of filter results keyed by the content of the input image, the operation and the region.
+ * Every lookup returns a new image, so callers may modify or keep what they get.
+ */
+final class ResultCache {
+
+    private static final int FILE_MAGIC = 0x504D5244;
+    private static final String FILE_SUFFIX = ".px";
+    private static final int IO_CHUNK_INTS = 64 * 1024;
+
+    private final long memoryBudget;
+    private final Path directory;
+    private final long diskBudget;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long memoryBytes;
+    private long diskBytes = -1;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    ResultCache(long memoryBudget) {
+        this(memoryBudget, null, 0);
+    }
+
+    /**
+     * @param directory {@code null} for memory only; created on first use
+     */
+    ResultCache(long memoryBudget, Path directory, long diskBudget) {
+        if (memoryBudget < 0 || diskBudget < 0) {
+            throw new IllegalArgumentException("Cache budgets must not be negative");
+        }
+        this.memoryBudget = memoryBudget;
+        this.directory = directory;
+        this.diskBudget = diskBudget;
+    }
+
+    /**
+     * An operation key of {@code null} marks a result that must not be reused; it is always computed.
+     */
+    BufferedImage apply(BufferedImage image, String operation, Region region, Supplier<BufferedImage> compute) {
+        if (operation == null) {
+            return compute.get();
+        }
+        String key = contentHash(image) + "|" + operation + "|" + (region == null ? "all" : region.cacheKey());
+
+        Entry entry = memoryGet(key);
+        if (entry != null) {
+            hits.incrementAndGet();
+            return entry.toImage();
+        }
+        entry = diskGet(key);
+        if (entry != null) {
+            hits.incrementAndGet();
+            diskHits.incrementAndGet();
+            memoryPut(key, entry);
+            return entry.toImage();
+        }
+
+        misses.incrementAndGet();
+        BufferedImage result = compute.get();
+        entry = Entry.of(result);
+        memoryPut(key, entry);
+        diskPut(key, entry);
+        return result;
+    }
+
+    long hits() {
+        return hits.get();
+    }
+
+    long diskHits() {
+        return diskHits.get();
+    }
+
+    long misses() {
+        return misses.get();
+    }
+
+    synchronized long memoryBytes() {
+        return memoryBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "Cache: " + hits() + " hits (" + diskHits() + " from disk), " + misses() + " misses";
+    }
+
+    private synchronized Entry memoryGet(String key) {
+        return entries.get(key);
+    }
+
+    private synchronized void memoryPut(String key, Entry entry) {
+        if (entry.bytes() > memoryBudget) {
+            return;
+        }
+        Entry previous = entries.put(key, entry);
+        memoryBytes += entry.bytes() - (previous == null ? 0 : previous.bytes());
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (memoryBytes > memoryBudget) {
+            memoryBytes -= eldest.next().bytes();
+            eldest.remove();
+        }
+    }
+
+    private Entry diskGet(String key) {
+        if (directory == null) {
+            return null;
+        }
+        Path file = directory.resolve(fileName(key));
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != FILE_MAGIC || !in.readUTF().equals(key)) {
+                return null;
+            }
+            int width = in.readInt(), height = in.readInt(), type = in.readInt();
+            PixelLayout layout = PixelLayout.of(new BufferedImage(width, height, type));
+            if (layout == null) {
+                return null;
+            }
+            Object data = layout.allocate(PixelLayout.length(layout.data));
+            if (data instanceof int[]) {
+                readInts(in, (int[]) data);
+            } else {
+                in.readFully((byte[]) data);
+            }
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            return new Entry(width, height, type, data);
+        } catch (IOException | RuntimeException e) {
+            // A missing or damaged entry is a miss; it is overwritten when the result is stored again.
+            return null;
+        }
+    }
+
+    /**
+     * Moved into place from a temporary file, so concurrent readers never see it half written.
+     */
+    private void diskPut(String key, Entry entry) {
+        if (directory == null || entry.bytes() > diskBudget) {
+            return;
+        }
+        Path file = directory.resolve(fileName(key));
+        try {
+            Files.createDirectories(directory);
+            Path temporary = Files.createTempFile(directory, "entry", ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                out.writeInt(FILE_MAGIC);
+                out.writeUTF(key);
+                out.writeInt(entry.width);
+                out.writeInt(entry.height);
+                out.writeInt(entry.type);
+                if (entry.data instanceof int[]) {
+                    writeInts(out, (int[]) entry.data);
+                } else {
+                    out.write((byte[]) entry.data);
+                }
+            }
+            long size = Files.size(temporary);
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            synchronized (this) {
+                diskBytes = diskBytes < 0 ? directorySize() : diskBytes + size;
+                if (diskBytes > diskBudget) {
+                    evictFiles();
+                }
+            }
+        } catch (IOException e) {
+            // A cache that cannot write only loses future hits.
+        }
+    }
+
+    private void evictFiles() throws IOException {
+        List<Path> files = cacheFiles();
+        files.sort(Comparator.comparing(file -> {
+            try {
+                return Files.getLastModifiedTime(file);
+            } catch (IOException e) {
+                return FileTime.fromMillis(0);
+            }
+        }));
+        diskBytes = directorySize();
+        for (Iterator<Path> oldest = files.iterator(); oldest.hasNext() && diskBytes > diskBudget; ) {
+            Path file = oldest.next();
+            long size = Files.size(file);
+            if (Files.deleteIfExists(file)) {
+                diskBytes -= size;
+            }
+        }
+    }
+
+    private long directorySize() throws IOException {
+        long size = 0;
+        for (Path file : cacheFiles()) {
+            size += Files.size(file);
+        }
+        return size;
+    }
+
+    private List<Path> cacheFiles() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + FILE_SUFFIX)) {
+            stream.forEach(files::add);
+        }
+        return files;
+    }
+
+    private static void writeInts(OutputStream out, int[] values) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4 * IO_CHUNK_INTS);
+        for (int start = 0; start < values.length; start += IO_CHUNK_INTS) {
+            int count = Math.min(IO_CHUNK_INTS, values.length - start);
+            buffer.clear();
+            buffer.asIntBuffer().put(values, start, count);
+            out.write(buffer.array(), 0, 4 * count);
+        }
+    }
+
+    private static void readInts(DataInputStream in, int[] values) throws IOException {
+        byte[] bytes = new byte[4 * IO_CHUNK_INTS];
+        for (int start = 0; start < values.length; start += IO_CHUNK_INTS) {
+            int count = Math.min(IO_CHUNK_INTS, values.length - start);
+            in.readFully(bytes, 0, 4 * count);
+            ByteBuffer.wrap(bytes, 0, 4 * count).asIntBuffer().get(values, start, count);
+        }
+    }
+
+    static String contentHash(BufferedImage image) {
+        PixelLayout layout = PixelLayout.of(image);
+        long first = 0x9E3779B97F4A7C15L ^ image.getWidth();
+        long second = 0xCBF29CE484222325L ^ ((long) image.getHeight() << 32 | image.getType());
+        if (layout != null && layout.data instanceof byte[]) {
+            for (byte value : (byte[]) layout.data) {
+                first = (first + value) * 0x9E3779B97F4A7C15L;
+                second = (second ^ value) * 0x100000001B3L;
+            }
+        } else {
+            for (int argb : layout != null ? (int[]) layout.data : PackedRaster.of(image).pixels) {
+                first = (first + argb) * 0x9E3779B97F4A7C15L;
+                second = (second ^ argb) * 0x100000001B3L;
+            }
+        }
+        return Long.toHexString(mix(first)) + Long.toHexString(mix(second));
+    }
+
+    private static long mix(long hash) {
+        hash = (hash ^ (hash >>> 33)) * 0xFF51AFD7ED558CCDL;
+        hash = (hash ^ (hash >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return hash ^ (hash >>> 33);
+    }
+
+    private static String fileName(String key) {
+        return sha256(key.getBytes(StandardCharsets.UTF_8)) + FILE_SUFFIX;
+    }
+
+    static String sha256(byte[] data) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(data);
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class Entry {
+
+        final int width;
+        final int height;
+        final int type;
+        final Object data;
+
+        Entry(int width, int height, int type, Object data) {
+            this.width = width;
+            this.height = height;
+            this.type = type;
+            this.data = data;
+        }
+
+        static Entry of(BufferedImage image) {
+            BufferedImage copy = PixelLayout.copy(PackedRaster.toSupportedType(image));
+            return new Entry(copy.getWidth(), copy.getHeight(), copy.getType(), PixelLayout.of(copy).data);
+        }
+
+        long bytes() {
+            return PixelLayout.bytes(data);
+        }
+
+        BufferedImage toImage() {
+            BufferedImage image = new BufferedImage(width, height, type);
+            System.arraycopy(data, 0, PixelLayout.of(image).data, 0, PixelLayout.length(data));
+            return image;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntConsumer;
+
+/**
+ * Splits an image into row bands processed on a shared fork/join pool. Bands read the unmodified source, so the
+ * result is identical to a sequential run; inside a {@link FilterJob} rows are split even on one thread, for cancelling.
+ */
+final class TileExecutor {
+
+    private static final int MIN_BAND_PIXELS = 16 * 1024;
+
+    private static int parallelism = Runtime.getRuntime().availableProcessors();
+    private static ForkJoinPool pool;
+
+    private TileExecutor() {
+    }
+
+    static synchronized int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Filters already running keep the pool they started on; its idle workers exit on their own.
+     */
+    static synchronized void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+        }
+        if (parallelism != TileExecutor.parallelism) {
+            pool = null;
+        }
+        TileExecutor.parallelism = parallelism;
+    }
+
+    private static synchronized ForkJoinPool pool() {
+        if (pool == null) {
+            pool = new ForkJoinPool(parallelism);
+        }
+        return pool;
+    }
+
+    static void forEachBand(int width, int height, BandTask task) {
+        FilterJob job = FilterJob.current();
+        int threads = getParallelism();
+        long pixels = (long) width * height;
+        int minRows = Math.max(1, MIN_BAND_PIXELS / Math.max(1, width));
+        if (threads == 1 || pixels < 2L * MIN_BAND_PIXELS) {
+            if (job == null) {
+                task.run(0, height);
+                return;
+            }
+            for (int startY = 0; startY < height; startY += minRows) {
+                job.checkCancelled();
+                task.run(startY, Math.min(height, startY + minRows));
+            }
+            return;
+        }
+        invoke(task, job, height, Math.max(minRows, height / (threads * 4)));
+    }
+
+    static void forEachIndex(int count, IntConsumer task) {
+        BandTask pieces = (start, end) -> {
+            for (int index = start; index < end; index++) {
+                task.accept(index);
+            }
+        };
+        if (getParallelism() == 1 || count < 2) {
+            pieces.run(0, count);
+            return;
+        }
+        invoke(pieces, null, count, 1);
+    }
+
+    /**
+     * Bytes the workers allocate for pieces the calling thread does not run are counted towards it.
+     */
+    private static void invoke(BandTask task, FilterJob job, int end, int bandRows) {
+        BandAction action = new BandAction(task, job, 0, end, bandRows, Thread.currentThread(), new LongAdder());
+        ForkJoinPool pool = pool();
+        try {
+            if (ForkJoinTask.getPool() == pool) {
+                action.compute();
+            } else {
+                pool.invoke(action);
+            }
+        } finally {
+            FilterMetrics.addHelperBytes(action.helperBytes.sum());
+        }
+    }
+
+    @FunctionalInterface
+    interface BandTask {
+        void run(int startY, int endY);
+    }
+
+    private static final class BandAction extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final BandTask task;
+        private final FilterJob job;
+        private final int startY;
+        private final int endY;
+        private final int bandRows;
+        private final Thread owner;
+        private final LongAdder helperBytes;
+
+        BandAction(BandTask task, FilterJob job, int startY, int endY, int bandRows, Thread owner, LongAdder helperBytes) {
+            this.task = task;
+            this.job = job;
+            this.startY = startY;
+            this.endY = endY;
+            this.bandRows = bandRows;
+            this.owner = owner;
+            this.helperBytes = helperBytes;
+        }
+
+        @Override
+        protected void compute() {
+            if (endY - startY <= bandRows) {
+                if (job != null) {
+                    job.checkCancelled();
+                }
+                if (Thread.currentThread() == owner) {
+                    task.run(startY, endY);
+                } else {
+                    FilterMetrics.runAsHelper(helperBytes, () -> task.run(startY, endY));
+                }
+                return;
+            }
+            int middle = (startY + endY) >>> 1;
+            invokeAll(new BandAction(task, job, startY, middle, bandRows, owner, helperBytes),
+                    new BandAction(task, job, middle, endY, bandRows, owner, helperBytes));
+        }
+    }
+}
@@ -0,0 +1,509 @@
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.ImageInputStream;
+import org.w3c.dom.Node;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.MultiPixelPackedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Vector;
+
+/**
+ * Image of packed ARGB pixels kept in a memory-mapped scratch file instead of the heap, laid out tile by tile.
+ * JPEG and non-interlaced PNG files are decoded in one pass, holding one row of tiles in the heap at a time;
+ * other formats are decoded a row of tiles at a time through {@link ImageReader} source regions.
+ */
+final class TiledImageStore implements Closeable {
+
+    static final int DEFAULT_TILE_SIZE = 512;
+    private static final long SEGMENT_BYTES = 1L << 30;
+
+    final int width;
+    final int height;
+    final int tileSize;
+    final boolean alpha;
+    private final int columns;
+    private final int rows;
+    private final Path directory;
+    private final FileChannel channel;
+    private final IntBuffer[] segments;
+    private final int tilesPerSegment;
+
+    private ImageInputStream input;
+    private ImageReader reader;
+    private final BitSet decodedRows = new BitSet();
+    private boolean sequentialTried;
+
+    private TiledImageStore(int width, int height, boolean alpha, int tileSize, Path directory) throws IOException {
+        if (width < 1 || height < 1) {
+            throw new IllegalArgumentException("Invalid image size: " + width + "x" + height);
+        }
+        if (tileSize < 16 || tileSize > 8192) {
+            throw new IllegalArgumentException("Tile size must be between 16 and 8192: " + tileSize);
+        }
+        this.width = width;
+        this.height = height;
+        this.alpha = alpha;
+        this.tileSize = tileSize;
+        this.directory = directory;
+        this.columns = (width + tileSize - 1) / tileSize;
+        this.rows = (height + tileSize - 1) / tileSize;
+
+        long tileBytes = 4L * tileSize * tileSize;
+        int tiles = columns * rows;
+        tilesPerSegment = (int) Math.max(1, SEGMENT_BYTES / tileBytes);
+        segments = new IntBuffer[(tiles + tilesPerSegment - 1) / tilesPerSegment];
+        Path file = Files.createTempFile(directory, "tiles", ".raw");
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+        for (int segment = 0; segment < segments.length; segment++) {
+            long first = (long) segment * tilesPerSegment;
+            long count = Math.min(tilesPerSegment, tiles - first);
+            segments[segment] = channel.map(FileChannel.MapMode.READ_WRITE, first * tileBytes, count * tileBytes)
+                    .order(ByteOrder.nativeOrder())
+                    .asIntBuffer();
+        }
+    }
+
+    static TiledImageStore create(int width, int height, boolean alpha, Path directory) throws IOException {
+        return new TiledImageStore(width, height, alpha, DEFAULT_TILE_SIZE, directory);
+    }
+
+    static TiledImageStore open(Path imageFile, Path directory) throws IOException {
+        ImageInputStream input = ImageIO.createImageInputStream(imageFile.toFile());
+        if (input == null) {
+            throw new IOException("Cannot open " + imageFile);
+        }
+        try {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                throw new IOException("No image reader for " + imageFile);
+            }
+            ImageReader reader = readers.next();
+            reader.setInput(input, false, true);
+            ImageTypeSpecifier type = reader.getRawImageType(0);
+            if (type == null) {
+                type = reader.getImageTypes(0).next();
+            }
+            TiledImageStore store = new TiledImageStore(reader.getWidth(0), reader.getHeight(0),
+                    type.getColorModel().hasAlpha(), DEFAULT_TILE_SIZE, directory);
+            store.input = input;
+            store.reader = reader;
+            return store;
+        } catch (IOException | RuntimeException e) {
+            input.close();
+            throw e;
+        }
+    }
+
+    static Dimension readSize(Path imageFile) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(imageFile.toFile())) {
+            Iterator<ImageReader> readers = input == null ? Collections.emptyIterator() : ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                return new Dimension(reader.getWidth(0), reader.getHeight(0));
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    TiledImageStore createCompatible() throws IOException {
+        return createCompatible(width, height);
+    }
+
+    TiledImageStore createCompatible(int width, int height) throws IOException {
+        return new TiledImageStore(width, height, alpha, tileSize, directory);
+    }
+
+    long pixelCount() {
+        return (long) width * height;
+    }
+
+    int tileCount() {
+        return columns * rows;
+    }
+
+    Rectangle tileBounds(int index) {
+        int x = (index % columns) * tileSize, y = (index / columns) * tileSize;
+        return new Rectangle(x, y, Math.min(tileSize, width - x), Math.min(tileSize, height - y));
+    }
+
+    int[] read(Rectangle area) throws IOException {
+        checkArea(area);
+        decodeRows(area);
+        int[] pixels = new int[area.width * area.height];
+        transfer(area, pixels, false);
+        return pixels;
+    }
+
+    void write(Rectangle area, int[] pixels) throws IOException {
+        checkArea(area);
+        if (pixels.length < area.width * area.height) {
+            throw new IllegalArgumentException("Expected " + area.width * area.height + " pixels, got " + pixels.length);
+        }
+        decodeRows(area);
+        transfer(area, pixels, true);
+    }
+
+    BufferedImage toImage(Rectangle area) throws IOException {
+        BufferedImage image = new BufferedImage(area.width, area.height, alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        int[] pixels = read(area);
+        PackedRaster raster = PackedRaster.of(image);
+        System.arraycopy(pixels, 0, raster.pixels, 0, pixels.length);
+        return raster.toImage();
+    }
+
+    BufferedImage subsample(int maxWidth, int maxHeight) throws IOException {
+        int step = Math.max(1, Math.max((width + maxWidth - 1) / maxWidth, (height + maxHeight - 1) / maxHeight));
+        int sampledWidth = (width + step - 1) / step, sampledHeight = (height + step - 1) / step;
+        BufferedImage sampled = new BufferedImage(sampledWidth, sampledHeight, alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        int[] target = PackedRaster.of(sampled).pixels;
+        for (int tileRow = 0; tileRow < rows; tileRow++) {
+            Rectangle band = new Rectangle(0, tileRow * tileSize, width, Math.min(tileSize, height - tileRow * tileSize));
+            int[] pixels = read(band);
+            for (int y = (band.y + step - 1) / step * step; y < band.y + band.height; y += step) {
+                int row = (y - band.y) * width, targetRow = (y / step) * sampledWidth;
+                for (int x = 0; x < sampledWidth; x++) {
+                    target[targetRow + x] = pixels[row + x * step];
+                }
+            }
+        }
+        return sampled;
+    }
+
+    RenderedImage asRenderedImage() {
+        return new View();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (reader != null) {
+            reader.dispose();
+            input.close();
+            reader = null;
+        }
+        channel.close();
+    }
+
+    private void checkArea(Rectangle area) {
+        if (area.x < 0 || area.y < 0 || area.width < 0 || area.height < 0
+                || area.x + area.width > width || area.y + area.height > height) {
+            throw new IllegalArgumentException("Area outside the image: " + area);
+        }
+    }
+
+    private void transfer(Rectangle area, int[] pixels, boolean write) {
+        int firstColumn = area.x / tileSize, lastColumn = (area.x + area.width - 1) / tileSize;
+        for (int y = area.y; y < area.y + area.height; y++) {
+            int tileRow = y / tileSize, rowInTile = y % tileSize;
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                int tile = tileRow * columns + column;
+                int tileX = column * tileSize;
+                int start = Math.max(area.x, tileX), end = Math.min(area.x + area.width, tileX + tileSize);
+                IntBuffer segment = segments[tile / tilesPerSegment];
+                int offset = (tile % tilesPerSegment) * tileSize * tileSize + rowInTile * tileSize + (start - tileX);
+                int index = (y - area.y) * area.width + (start - area.x);
+                if (write) {
+                    segment.put(offset, pixels, index, end - start);
+                } else {
+                    segment.get(offset, pixels, index, end - start);
+                }
+            }
+        }
+    }
+
+    private synchronized void decodeRows(Rectangle area) throws IOException {
+        if (reader == null || area.isEmpty()) {
+            return;
+        }
+        if (!sequentialTried) {
+            sequentialTried = true;
+            if (decodeSequentially()) {
+                reader.dispose();
+                input.close();
+                reader = null;
+                return;
+            }
+        }
+        ImageReadParam param = reader.getDefaultReadParam();
+        for (int tileRow = area.y / tileSize; tileRow <= (area.y + area.height - 1) / tileSize; tileRow++) {
+            if (decodedRows.get(tileRow)) {
+                continue;
+            }
+            Rectangle band = new Rectangle(0, tileRow * tileSize, width, Math.min(tileSize, height - tileRow * tileSize));
+            param.setSourceRegion(band);
+            BufferedImage decoded = reader.read(0, param);
+            transfer(band, PackedRaster.of(decoded).read(new Rectangle(band.width, band.height)), true);
+            decodedRows.set(tileRow);
+        }
+    }
+
+    /**
+     * Returns whether the reader wrote its rows in order.
+     */
+    private boolean decodeSequentially() throws IOException {
+        String format = reader.getFormatName().toLowerCase(Locale.ROOT);
+        if (!format.equals("jpeg") && !(format.equals("png") && !isInterlaced())) {
+            return false;
+        }
+        ImageTypeSpecifier type = reader.getRawImageType(0);
+        if (type == null) {
+            type = reader.getImageTypes(0).next();
+        }
+        SampleModel model = type.getSampleModel(width, height);
+        int stride = scanlineStride(model);
+        if (stride <= 0 || (long) stride * height > Integer.MAX_VALUE) {
+            return false;
+        }
+        RowBandBuffer buffer = new RowBandBuffer(type, stride, Raster.createWritableRaster(type.getSampleModel(width, tileSize), null).getDataBuffer());
+        ImageReadParam param = reader.getDefaultReadParam();
+        param.setDestination(new BufferedImage(type.getColorModel(), Raster.createWritableRaster(model, buffer, null),
+                type.getColorModel().isAlphaPremultiplied(), null));
+        try {
+            reader.read(0, param);
+        } catch (OutOfOrderException e) {
+            decodedRows.clear();
+            return false;
+        }
+        buffer.flush();
+        return true;
+    }
+
+    private boolean isInterlaced() throws IOException {
+        Node header = reader.getImageMetadata(0).getAsTree("javax_imageio_png_1.0").getFirstChild();
+        for (; header != null; header = header.getNextSibling()) {
+            if (header.getNodeName().equals("IHDR")) {
+                Node method = header.getAttributes().getNamedItem("interlaceMethod");
+                return method == null || !method.getNodeValue().equals("none");
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 0 for sample models whose rows are not laid out one after the other.
+     */
+    private static int scanlineStride(SampleModel model) {
+        if (model instanceof ComponentSampleModel) {
+            return ((ComponentSampleModel) model).getScanlineStride();
+        }
+        if (model instanceof MultiPixelPackedSampleModel) {
+            return ((MultiPixelPackedSampleModel) model).getScanlineStride();
+        }
+        if (model instanceof SinglePixelPackedSampleModel) {
+            return ((SinglePixelPackedSampleModel) model).getScanlineStride();
+        }
+        return 0;
+    }
+
+    /**
+     * A write below the current row of tiles packs it into the store; a write above it means the reader does not
+     * write rows in order.
+     */
+    private final class RowBandBuffer extends DataBuffer {
+
+        private final ImageTypeSpecifier type;
+        private final int stride;
+        private final DataBuffer band;
+        private int tileRow;
+        private int start;
+
+        RowBandBuffer(ImageTypeSpecifier type, int stride, DataBuffer band) {
+            super(band.getDataType(), stride * height, band.getNumBanks());
+            this.type = type;
+            this.stride = stride;
+            this.band = band;
+        }
+
+        @Override
+        public int getElem(int bank, int index) {
+            int offset = index - start;
+            return offset >= 0 && offset < band.getSize() ? band.getElem(bank, offset) : 0;
+        }
+
+        @Override
+        public void setElem(int bank, int index, int value) {
+            int offset = index - start;
+            if (offset < 0) {
+                throw new OutOfOrderException();
+            }
+            while (offset >= band.getSize()) {
+                flush();
+                tileRow++;
+                start += band.getSize();
+                offset -= band.getSize();
+            }
+            band.setElem(bank, offset, value);
+        }
+
+        void flush() {
+            if (tileRow >= rows) {
+                return;
+            }
+            Rectangle bounds = new Rectangle(0, tileRow * tileSize, width, Math.min(tileSize, height - tileRow * tileSize));
+            WritableRaster raster = Raster.createWritableRaster(type.getSampleModel(width, tileSize), band, null);
+            BufferedImage image = new BufferedImage(type.getColorModel(), raster, type.getColorModel().isAlphaPremultiplied(), null);
+            int[] pixels = PackedRaster.of(image).read(new Rectangle(bounds.width, bounds.height));
+            transfer(bounds, pixels, true);
+            decodedRows.set(tileRow);
+        }
+    }
+
+    private static final class OutOfOrderException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+    }
+
+    private final class View implements RenderedImage {
+
+        private final ColorModel colorModel = alpha
+                ? new DirectColorModel(32, 0xFF0000, 0xFF00, 0xFF, 0xFF000000)
+                : new DirectColorModel(24, 0xFF0000, 0xFF00, 0xFF);
+
+        @Override
+        public Vector<RenderedImage> getSources() {
+            return null;
+        }
+
+        @Override
+        public Object getProperty(String name) {
+            return Image.UndefinedProperty;
+        }
+
+        @Override
+        public String[] getPropertyNames() {
+            return null;
+        }
+
+        @Override
+        public ColorModel getColorModel() {
+            return colorModel;
+        }
+
+        @Override
+        public SampleModel getSampleModel() {
+            return colorModel.createCompatibleSampleModel(tileSize, tileSize);
+        }
+
+        @Override
+        public int getWidth() {
+            return width;
+        }
+
+        @Override
+        public int getHeight() {
+            return height;
+        }
+
+        @Override
+        public int getMinX() {
+            return 0;
+        }
+
+        @Override
+        public int getMinY() {
+            return 0;
+        }
+
+        @Override
+        public int getNumXTiles() {
+            return columns;
+        }
+
+        @Override
+        public int getNumYTiles() {
+            return rows;
+        }
+
+        @Override
+        public int getMinTileX() {
+            return 0;
+        }
+
+        @Override
+        public int getMinTileY() {
+            return 0;
+        }
+
+        @Override
+        public int getTileWidth() {
+            return tileSize;
+        }
+
+        @Override
+        public int getTileHeight() {
+            return tileSize;
+        }
+
+        @Override
+        public int getTileGridXOffset() {
+            return 0;
+        }
+
+        @Override
+        public int getTileGridYOffset() {
+            return 0;
+        }
+
+        @Override
+        public Raster getTile(int tileX, int tileY) {
+            return getData(tileBounds(tileY * columns + tileX));
+        }
+
+        @Override
+        public Raster getData() {
+            return getData(new Rectangle(width, height));
+        }
+
+        @Override
+        public Raster getData(Rectangle rect) {
+            Rectangle area = rect.intersection(new Rectangle(width, height));
+            try {
+                int[] pixels = read(area);
+                SampleModel model = new SinglePixelPackedSampleModel(DataBufferInt.TYPE_INT, area.width, area.height,
+                        ((SinglePixelPackedSampleModel) colorModel.createCompatibleSampleModel(1, 1)).getBitMasks());
+                return Raster.createWritableRaster(model, new DataBufferInt(pixels, pixels.length), new Point(area.x, area.y));
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot read tiles of " + area, e);
+            }
+        }
+
+        @Override
+        public WritableRaster copyData(WritableRaster raster) {
+            Rectangle area = raster == null ? new Rectangle(width, height) : raster.getBounds();
+            Raster data = getData(area);
+            if (raster == null) {
+                return (WritableRaster) data;
+            }
+            raster.setRect(data);
+            return raster;
+        }
+    }
+}
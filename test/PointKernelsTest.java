@@ -0,0 +1,183 @@
+import java.awt.*;
+import java.awt.geom.Ellipse2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Checks that the vector point kernels give exactly the scalar filters' pixels, on every color, at every offset,
+ * inside regions and within fused chains.
+ * <pre>
+ * javac -d out src/*.java
+ * javac --add-modules jdk.incubator.vector -cp out -d out vector/*.java
+ * javac -cp out -d out test/*.java
+ * java -ea --add-modules jdk.incubator.vector -cp out PointKernelsTest
+ * </pre>
+ */
+final class PointKernelsTest {
+
+    private static final Color[] TINTS = {
+            Color.BLACK, Color.WHITE, new Color(255, 200, 200), new Color(17, 128, 254), new Color(1, 2, 3)
+    };
+    private static final String[] CHAINS = {
+            "grayscale", "threshold", "sepia", "tint:255:200:200", "tint:17:128:254",
+            "grayscale,sepia", "sepia,tint:40:90:200,threshold", "tint:3:250:7,grayscale,negative,sepia",
+            "lighter,sepia,darker,tint:128:128:128", "sepia,sepia,sepia"
+    };
+
+    private PointKernelsTest() {
+    }
+
+    public static void main(String[] args) {
+        System.setProperty("photomaster.pointKernels", CountingKernels.class.getName());
+        String backend = PointKernels.describe();
+        if (!backend.startsWith("vector")) {
+            throw new AssertionError("Vector backend not loaded (" + backend + "); run with --add-modules jdk.incubator.vector");
+        }
+        PointKernels.Backend kernels = new VectorPointKernels();
+        allColors("grayscale", ImageFilterProcessor::grayscale, kernels::grayscale);
+        allColors("threshold", ImageFilterProcessor::threshold, kernels::threshold);
+        allColors("sepia", ImageFilterProcessor::sepia, kernels::sepia);
+        for (Color tint : TINTS) {
+            allColors("tint " + tint, ImageFilterProcessor.tintLut(tint), (source, target, from, to) -> kernels.tint(source, target, from, to, tint));
+        }
+        System.out.println("all colors: ok");
+
+        Region[] regions = {
+                null,
+                Region.of(new Rectangle(13, 7, 301, 211)),
+                Region.of(new Ellipse2D.Double(5, 3, 377, 259)),
+                Region.of(new Ellipse2D.Double(-40, -30, 90, 70))
+        };
+        for (int type : new int[] { BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_3BYTE_BGR }) {
+            BufferedImage image = image(401, 283, type);
+            for (String spec : CHAINS) {
+                for (Region region : regions) {
+                    chain(spec, image, region);
+                }
+            }
+        }
+        System.out.println("regions and chains: ok (" + backend + ")");
+    }
+
+    private static void allColors(String name, ImageFilterProcessor.PixelTransformer scalar, PointKernels.RowKernel kernel) {
+        int[] source = new int[1 << 24];
+        SplittableRandom random = new SplittableRandom(name.hashCode());
+        for (int rgb = 0; rgb < source.length; rgb++) {
+            source[rgb] = random.nextInt(256) << 24 | rgb;
+        }
+        int[] expected = new int[source.length];
+        for (int i = 0; i < source.length; i++) {
+            expected[i] = scalar.apply(source[i] | 0xFF000000);
+        }
+
+        int[] copied = new int[source.length];
+        kernel.apply(source, copied, 0, source.length);
+        assertEquals(name + ", copied", expected, copied, 0, source.length);
+        int[] inPlace = source.clone();
+        kernel.apply(inPlace, inPlace, 0, inPlace.length);
+        assertEquals(name + ", in place", expected, inPlace, 0, source.length);
+
+        for (int from = 0; from < 67; from++) {
+            for (int length = 0; length < 67; length++) {
+                int start = from * 4099 + length, end = start + length;
+                int[] target = new int[end + 1];
+                kernel.apply(source, target, start, end);
+                assertEquals(name + ", run " + start + ".." + end, expected, target, start, end);
+                if (target[end] != 0 || (start > 0 && target[start - 1] != 0)) {
+                    throw new AssertionError(name + ": run " + start + ".." + end + " wrote outside its bounds");
+                }
+            }
+        }
+    }
+
+    private static void chain(String spec, BufferedImage image, Region region) {
+        FilterChain chain = FilterChain.parse(spec);
+        List<ImageFilterProcessor.PixelTransformer> scalar = new ArrayList<>();
+        RasterFormat format = RasterFormat.of(image);
+        for (FilterStep step : chain.getSteps()) {
+            ImageFilterProcessor.PixelTransformer point = step.getPointOperation();
+            scalar.add(argb -> point.apply(argb));
+            format = step.output(format, region);
+        }
+        ImageFilterProcessor.PixelTransformer composed = argb -> {
+            for (ImageFilterProcessor.PixelTransformer stage : scalar) {
+                argb = stage.apply(argb);
+            }
+            return argb;
+        };
+        BufferedImage expected = ImageFilterProcessor.applyPixelFilter(PackedRaster.of(image), region, composed, format);
+        long rows = CountingKernels.ROWS.sum();
+        BufferedImage actual = chain.apply(image, region);
+        if (CountingKernels.ROWS.sum() == rows) {
+            throw new AssertionError(spec + " in " + region + " did not run the vector row kernels");
+        }
+
+        String name = spec + " on type " + image.getType() + " in " + region;
+        if (actual.getType() != expected.getType() || actual.getWidth() != expected.getWidth() || actual.getHeight() != expected.getHeight()) {
+            throw new AssertionError(name + ": got a " + actual.getWidth() + "x" + actual.getHeight() + " image of type " + actual.getType()
+                    + ", expected " + expected.getWidth() + "x" + expected.getHeight() + " of type " + expected.getType());
+        }
+        int width = expected.getWidth(), height = expected.getHeight();
+        int[] want = expected.getRGB(0, 0, width, height, null, 0, width);
+        int[] got = actual.getRGB(0, 0, width, height, null, 0, width);
+        assertEquals(name, want, got, 0, want.length);
+    }
+
+    static final class CountingKernels implements PointKernels.Backend {
+
+        static final LongAdder ROWS = new LongAdder();
+
+        private final PointKernels.Backend vector = new VectorPointKernels();
+
+        @Override
+        public String describe() {
+            return vector.describe();
+        }
+
+        @Override
+        public void grayscale(int[] source, int[] target, int from, int to) {
+            ROWS.increment();
+            vector.grayscale(source, target, from, to);
+        }
+
+        @Override
+        public void threshold(int[] source, int[] target, int from, int to) {
+            ROWS.increment();
+            vector.threshold(source, target, from, to);
+        }
+
+        @Override
+        public void sepia(int[] source, int[] target, int from, int to) {
+            ROWS.increment();
+            vector.sepia(source, target, from, to);
+        }
+
+        @Override
+        public void tint(int[] source, int[] target, int from, int to, Color tint) {
+            ROWS.increment();
+            vector.tint(source, target, from, to, tint);
+        }
+    }
+
+    private static BufferedImage image(int width, int height, int type) {
+        BufferedImage image = new BufferedImage(width, height, type);
+        SplittableRandom random = new SplittableRandom(type);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, (x + y) % 7 == 0 ? random.nextInt() : 0xFF000000 | (x * 255 / width) << 16 | (y * 255 / height) << 8 | (x ^ y) & 0xFF);
+            }
+        }
+        return image;
+    }
+
+    private static void assertEquals(String name, int[] expected, int[] actual, int from, int to) {
+        if (!Arrays.equals(expected, from, to, actual, from, to)) {
+            int i = from + Arrays.mismatch(expected, from, to, actual, from, to);
+            throw new AssertionError(String.format("%s: pixel %d is %08x, expected %08x", name, i, actual[i], expected[i]));
+        }
+    }
+}
@@ -0,0 +1,135 @@
+import java.awt.*;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Point filter row kernels on the Vector API, loaded by {@link PointKernels}. Kernels do not call helpers taking or
+ * returning vectors: C2 stops inlining such a helper once it is compiled on its own, and boxes every vector it passes.
+ * <pre>
+ * javac --add-modules jdk.incubator.vector -cp out -d out vector/*.java
+ * </pre>
+ */
+final class VectorPointKernels implements PointKernels.Backend {
+
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+
+    /**
+     * {@code (sum * THIRD) >>> 16} is {@code sum / 3} for every sum of three channels.
+     */
+    private static final int THIRD = 21846;
+    /**
+     * {@code (s * THOUSANDTH) >>> 23}, unsigned, is {@code s / 1000} or one more for every sepia sum {@code s}.
+     */
+    private static final int THOUSANDTH = 8389;
+    private static final int ALPHA = 0xFF000000;
+
+    @Override
+    public String describe() {
+        return "vector (" + INTS.vectorBitSize() + "-bit)";
+    }
+
+    @Override
+    public void grayscale(int[] source, int[] target, int from, int to) {
+        int i = from;
+        for (int bound = from + INTS.loopBound(to - from); i < bound; i += INTS.length()) {
+            IntVector argb = IntVector.fromArray(INTS, source, i);
+            IntVector gray = argb.lanewise(VectorOperators.LSHR, 16).and(0xFF)
+                    .add(argb.lanewise(VectorOperators.LSHR, 8).and(0xFF))
+                    .add(argb.and(0xFF))
+                    .mul(THIRD)
+                    .lanewise(VectorOperators.LSHR, 16);
+            gray.lanewise(VectorOperators.LSHL, 16)
+                    .or(gray.lanewise(VectorOperators.LSHL, 8))
+                    .or(gray)
+                    .or(ALPHA)
+                    .intoArray(target, i);
+        }
+        for (; i < to; i++) {
+            target[i] = ImageFilterProcessor.grayscale(source[i] | ALPHA);
+        }
+    }
+
+    @Override
+    public void threshold(int[] source, int[] target, int from, int to) {
+        IntVector black = IntVector.broadcast(INTS, ALPHA);
+        int i = from;
+        for (int bound = from + INTS.loopBound(to - from); i < bound; i += INTS.length()) {
+            IntVector argb = IntVector.fromArray(INTS, source, i);
+            VectorMask<Integer> white = argb.lanewise(VectorOperators.LSHR, 16).and(0xFF)
+                    .add(argb.lanewise(VectorOperators.LSHR, 8).and(0xFF))
+                    .add(argb.and(0xFF))
+                    .mul(THIRD)
+                    .lanewise(VectorOperators.LSHR, 16)
+                    .compare(VectorOperators.GT, 128);
+            black.blend(0xFFFFFFFF, white).intoArray(target, i);
+        }
+        for (; i < to; i++) {
+            target[i] = ImageFilterProcessor.threshold(source[i] | ALPHA);
+        }
+    }
+
+    /**
+     * A sum that is an exact multiple of 1000 may come out one lower in the scalar filter's double arithmetic,
+     * so vectors containing one are left to it.
+     */
+    @Override
+    public void sepia(int[] source, int[] target, int from, int to) {
+        int i = from;
+        for (int bound = from + INTS.loopBound(to - from); i < bound; i += INTS.length()) {
+            IntVector argb = IntVector.fromArray(INTS, source, i);
+            IntVector red = argb.lanewise(VectorOperators.LSHR, 16).and(0xFF);
+            IntVector green = argb.lanewise(VectorOperators.LSHR, 8).and(0xFF);
+            IntVector blue = argb.and(0xFF);
+            IntVector sr = red.mul(393).add(green.mul(769)).add(blue.mul(189));
+            IntVector sg = red.mul(349).add(green.mul(686)).add(blue.mul(168));
+            IntVector sb = red.mul(272).add(green.mul(534)).add(blue.mul(131));
+            // (s * THOUSANDTH) >>> 23 is s / 1000 or one more; the compare corrects it
+            IntVector tr = sr.mul(THOUSANDTH).lanewise(VectorOperators.LSHR, 23);
+            IntVector tg = sg.mul(THOUSANDTH).lanewise(VectorOperators.LSHR, 23);
+            IntVector tb = sb.mul(THOUSANDTH).lanewise(VectorOperators.LSHR, 23);
+            tr = tr.sub(1, tr.mul(1000).compare(VectorOperators.GT, sr));
+            tg = tg.sub(1, tg.mul(1000).compare(VectorOperators.GT, sg));
+            tb = tb.sub(1, tb.mul(1000).compare(VectorOperators.GT, sb));
+            VectorMask<Integer> exact = tr.mul(1000).compare(VectorOperators.EQ, sr)
+                    .or(tg.mul(1000).compare(VectorOperators.EQ, sg))
+                    .or(tb.mul(1000).compare(VectorOperators.EQ, sb));
+            if (exact.anyTrue()) {
+                for (int j = i; j < i + INTS.length(); j++) {
+                    target[j] = ImageFilterProcessor.sepia(source[j] | ALPHA);
+                }
+                continue;
+            }
+            tr.min(255).lanewise(VectorOperators.LSHL, 16)
+                    .or(tg.min(255).lanewise(VectorOperators.LSHL, 8))
+                    .or(tb.min(255))
+                    .or(ALPHA)
+                    .intoArray(target, i);
+        }
+        for (; i < to; i++) {
+            target[i] = ImageFilterProcessor.sepia(source[i] | ALPHA);
+        }
+    }
+
+    /**
+     * {@code (a & b) + ((a ^ b) >> 1)} never carries into the next channel, so all three are averaged at once.
+     */
+    @Override
+    public void tint(int[] source, int[] target, int from, int to, Color tint) {
+        int rgb = tint.getRGB() & 0xFFFFFF;
+        int i = from;
+        for (int bound = from + INTS.loopBound(to - from); i < bound; i += INTS.length()) {
+            IntVector argb = IntVector.fromArray(INTS, source, i);
+            argb.and(rgb)
+                    .add(argb.lanewise(VectorOperators.XOR, rgb).and(0xFEFEFE).lanewise(VectorOperators.LSHR, 1))
+                    .or(ALPHA)
+                    .intoArray(target, i);
+        }
+        for (; i < to; i++) {
+            int argb = source[i];
+            target[i] = ALPHA | (argb & rgb) + (((argb ^ rgb) & 0xFEFEFE) >>> 1);
+        }
+    }
+}